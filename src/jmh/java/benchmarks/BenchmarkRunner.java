@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks of the bot and reports their throughput in operations per second along with their allocation
+ * rate. Takes the usual JMH command line options, for example a regular expression of the benchmarks to run or
+ * {@code -p lines=1000} to run on a single file size.
+ * Build with {@code mvn -P benchmark package} and run with {@code java -jar target/benchmarks.jar}. For a quick check
+ * of the smaller files, {@code java -jar target/benchmarks.jar Memory -wi 1 -i 2 -w 1s -r 1s -p lines=1000,100000}
+ * runs the Memory benchmarks in a few minutes.
+ */
+
+public class BenchmarkRunner {
+	
+	private BenchmarkRunner () {
+		throw new UnsupportedOperationException();
+	}
+	
+	public static void main (String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+		                                      .mode(Mode.Throughput)
+		                                      .timeUnit(TimeUnit.SECONDS)
+		                                      .addProfiler(GCProfiler.class)
+		                                      .build();
+		
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic data files shaped like the files of the bot: one player per line, with a name, a numeric id and a rank.
+ */
+
+final class DataFiles {
+	
+	static final String[] RANKS = {"recruit", "recruiter", "captain", "chief", "leader"};
+	
+	private DataFiles () {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Creates a data file in a new temporary directory
+	 *
+	 * @param lines The amount of lines in the file
+	 *
+	 * @return Path of the created file
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	
+	static Path create (int lines) throws IOException {
+		Path file = Files.createTempDirectory("coffee-bench").resolve("players.txt");
+		
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < lines; i++) {
+				writer.write(line(i));
+				writer.write('\n');
+			}
+		}
+		
+		return file;
+	}
+	
+	/**
+	 * @param i Index of the line
+	 *
+	 * @return The content of the line
+	 */
+	
+	static String line (int i) {
+		return "player" + i + " " + (710050922201350195L + i) + " " + RANKS[i % RANKS.length];
+	}
+	
+	/**
+	 * Deletes a data file along with its directory and every sidecar file next to it
+	 *
+	 * @param file Path of the file
+	 *
+	 * @throws IOException if the files can't be deleted
+	 */
+	
+	static void delete (Path file) throws IOException {
+		try (Stream<Path> paths = Files.walk(file.getParent())) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}
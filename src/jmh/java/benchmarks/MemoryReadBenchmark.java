@@ -0,0 +1,69 @@
+package benchmarks;
+
+import modules.memory.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths of Memory on files of 1K, 100K and 1M lines. The keywords are taken from the last lines of the file, so
+ * searches walk the whole file. find looks for the last line as a whole line ({@code keywordIsLine = true}), and
+ * findLine for the last player name as a part of a line.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryReadBenchmark {
+	
+	@Param({"1000", "100000", "1000000"})
+	private int lines;
+	
+	private Path file;
+	private String path;
+	private String lastLine;
+	private String lastPlayer;
+	
+	@Setup(Level.Trial)
+	public void setUp () throws IOException {
+		file       = DataFiles.create(lines);
+		path       = file.toString();
+		lastLine   = DataFiles.line(lines - 1);
+		lastPlayer = "player" + (lines - 1) + " ";
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown () throws IOException {
+		DataFiles.delete(file);
+	}
+	
+	@Benchmark
+	public String readFile () {
+		return Memory.readFile(path);
+	}
+	
+	@Benchmark
+	public String goLine () {
+		return Memory.goLine(path, lines / 2);
+	}
+	
+	@Benchmark
+	public boolean find () {
+		return Memory.find(path, lastLine, false, true);
+	}
+	
+	@Benchmark
+	public long findLine () {
+		return Memory.findLine(path, lastPlayer, true, false);
+	}
+	
+	@Benchmark
+	public int countLines () throws IOException {
+		return Memory.countLines(path);
+	}
+}
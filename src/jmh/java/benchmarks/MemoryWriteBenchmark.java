@@ -0,0 +1,67 @@
+package benchmarks;
+
+import modules.memory.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write paths of Memory on files of 1K, 100K and 1M lines. Every iteration starts from a fresh file, and replacements
+ * alternate between two values so the file keeps its shape from one invocation to the next.
+ * The commit window is disabled, so each call measures its own commit instead of the wait for its batch.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryWriteBenchmark {
+	
+	@Param({"1000", "100000", "1000000"})
+	private int lines;
+	
+	private Path file;
+	private String path;
+	private String middleLine;
+	private boolean swapped;
+	private long written;
+	
+	@Setup(Level.Iteration)
+	public void setUp () throws IOException {
+		Memory.setCommitWindow(0);
+		file       = DataFiles.create(lines);
+		path       = file.toString();
+		middleLine = DataFiles.line(lines / 2);
+		swapped    = false;
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown () throws IOException {
+		DataFiles.delete(file);
+	}
+	
+	@Benchmark
+	public void writeFile () {
+		Memory.writeFile(path, DataFiles.line(lines + (int) written++));
+	}
+	
+	@Benchmark
+	public boolean replace () {
+		swapped = !swapped;
+		return swapped
+		       ? Memory.replace(path, middleLine, middleLine + "!", false, true)
+		       : Memory.replace(path, middleLine + "!", middleLine, false, true);
+	}
+	
+	@Benchmark
+	public int replaceAll () {
+		swapped = !swapped;
+		return swapped
+		       ? Memory.replaceAll(path, "captain", "CAPTAIN", false, false)
+		       : Memory.replaceAll(path, "CAPTAIN", "captain", false, false);
+	}
+}
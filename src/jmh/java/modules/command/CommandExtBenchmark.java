@@ -0,0 +1,121 @@
+package modules.command;
+
+import bot.Constants;
+import com.jagrosh.jdautilities.command.CommandClient;
+import com.jagrosh.jdautilities.command.CommandEvent;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommandExt.validate on synthetic command events. The JDA entities behind the events are offline stubs, so the
+ * benchmark measures the validation itself and never reaches Discord.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandExtBenchmark {
+	
+	private CommandExt command;
+	private CommandEvent accepted;
+	private CommandEvent rejected;
+	
+	@Setup(Level.Trial)
+	public void setUp () {
+		command  = new MagicShellCommand();
+		accepted = event(Constants.PREFIX + "magicshell will I ever get married?");
+		rejected = event(Constants.PREFIX + "magicshell");
+	}
+	
+	@Benchmark
+	public boolean validateAccepted () {
+		return command.validate(accepted);
+	}
+	
+	@Benchmark
+	public boolean validateRejected () {
+		return command.validate(rejected);
+	}
+	
+	/**
+	 * Builds a command event of a message sent by a member without roles in an allowed channel
+	 *
+	 * @param content The content of the message
+	 *
+	 * @return The command event
+	 */
+	
+	private static CommandEvent event (String content) {
+		Guild guild = stub(Guild.class, Collections.emptyMap());
+		Map<String, Object> channel = new HashMap<>();
+		channel.put("getType", ChannelType.TEXT);
+		channel.put("getIdLong", Constants.COFFEE);
+		channel.put("getGuild", guild);
+		
+		Map<String, Object> message = new HashMap<>();
+		message.put("getContentRaw", content);
+		message.put("getChannel", stub(TextChannel.class, channel));
+		message.put("getGuild", guild);
+		message.put("getAuthor", stub(User.class, Collections.emptyMap()));
+		message.put("getMember", stub(Member.class, Collections.singletonMap("getRoles", Collections.emptyList())));
+		
+		MessageReceivedEvent event = new MessageReceivedEvent(stub(JDA.class, Collections.emptyMap()), 0,
+		                                                      stub(Message.class, message));
+		return new CommandEvent(event, content.substring(content.indexOf(' ') + 1),
+		                        stub(CommandClient.class, Collections.emptyMap()));
+	}
+	
+	/**
+	 * Creates an implementation of an interface that answers the given methods with fixed values. Other methods
+	 * return a stub of their interface, an empty string, or the default value of their type, so calls such as
+	 * {@code sendMessage(...).queue()} do nothing.
+	 *
+	 * @param type    The interface
+	 * @param answers Values to return, by method name
+	 * @param <T>     Type of the interface
+	 *
+	 * @return The stub
+	 */
+	
+	private static <T> T stub (Class<T> type, Map<String, Object> answers) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return type.getSimpleName();
+				default:
+					break;
+			}
+			
+			if (answers.containsKey(method.getName()))
+				return answers.get(method.getName());
+			
+			Class<?> returned = method.getReturnType();
+			
+			if (returned == void.class)
+				return null;
+			if (returned.isPrimitive())
+				return Array.get(Array.newInstance(returned, 1), 0);
+			if (returned == String.class)
+				return "";
+			if (returned.isInterface())
+				return stub(returned, Collections.emptyMap());
+			return null;
+		}));
+	}
+}
@@ -57,6 +57,8 @@ public class Constants {
 	// Paths
 	
 	public static final String PLAYERS_PATH = "src/main/resources/players.txt";
+	public static final String PLAYER_REGISTRY_PATH = "src/main/resources/player-registry.txt";
+	public static final String PLAYERS_SEPARATOR = " ";
 	public static final String CONFIG_PATH = "src/main/resources/config.txt";
 	public static final String TEST_PATH = "src/main/resources/test.txt";
 	
@@ -66,6 +68,7 @@ public class Constants {
 	public static final long COFFEE = 710060921694847009L;
 	public static final long BOT_SPAM = 698314639120924682L;
 	public static final long WELCOME = 698313380066492467L;
+	public static final String SUGGESTIONS = "suggestions";
 	
 	// Roles
 	
@@ -3,11 +3,17 @@ package bot;
 
 import com.jagrosh.jdautilities.command.CommandClient;
 import com.jagrosh.jdautilities.command.CommandClientBuilder;
+import modules.command.HelpBuilder;
 import modules.command.MagicShellCommand;
+import modules.memory.KeyValueStore;
+import modules.memory.MemberRegistry;
+import modules.trigger.ChannelRouter;
+import modules.trigger.TriggerEngine;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.ReadyEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.priv.react.PrivateMessageReactionAddEvent;
@@ -30,15 +36,20 @@ public class Main extends ListenerAdapter {
 	private static JDA jda;
 	private final Logger logger = LoggerFactory.getLogger(Main.class);
 	private long ruleMessageID = 0L;
+	private volatile TriggerEngine triggers = TriggerEngine.builder().build();
 	private static final Scanner input = new Scanner(System.in);
+	private static final MemberRegistry<String> players =
+			MemberRegistry.load(Constants.PLAYER_REGISTRY_PATH, Constants.PLAYERS_SEPARATOR, KeyValueStore.Codec.STRING);
 	
 	public static void main (String[] args) throws LoginException, InterruptedException {
+		ChannelRouter router = new ChannelRouter().route(Constants.SUGGESTIONS, Main::suggestion);
 		CommandClient commandClient = new CommandClientBuilder().setPrefix(
 				Constants.PREFIX)
 		                                                        .setOwnerId(
 				                                                        Constants.OWNER_ID +
 				                                                        "")
 		                                                        .useHelpBuilder(true)
+		                                                        .setHelpConsumer(HelpBuilder::help)
 		                                                        .setEmojis(
 				                                                        Constants.SUCCESS,
 				                                                        Constants.WARNING,
@@ -52,7 +63,7 @@ public class Main extends ListenerAdapter {
 		
 		jda = JDABuilder.create(Secret.TOKEN,
 		                        GatewayIntent.getIntents(GatewayIntent.ALL_INTENTS))
-		                .addEventListeners(new Main(), commandClient)
+		                .addEventListeners(new Main(), router, commandClient)
 		                .setAutoReconnect(true)
 		                .build()
 		                .awaitReady();
@@ -93,33 +104,55 @@ public class Main extends ListenerAdapter {
 		if (event.getMessageIdLong() == ruleMessageID &&
 		    event.getReactionEmote().getName().equalsIgnoreCase(Constants.UPVOTE)) {
 			logger.debug("Entered Reaction If");
-			Objects.requireNonNull(jda.getGuildById(Constants.GUILD_ID))
-			       .addRoleToMember(event.getUserId(),
-			                        Objects.requireNonNull(jda.getRoleById(Constants.RECRUIT)))
-			       .queue();
+			Guild guild = Objects.requireNonNull(jda.getGuildById(Constants.GUILD_ID));
+			Role recruit = Objects.requireNonNull(jda.getRoleById(Constants.RECRUIT));
+			Member member = guild.getMemberById(event.getUserIdLong());
+			
+			if (member != null && member.getRoles().contains(recruit))
+				return;
+			
+			guild.addRoleToMember(event.getUserId(), recruit)
+			     .queue(success -> guild.retrieveMemberById(event.getUserIdLong())
+			                            .queue(player -> players.put(player.getIdLong(), player.getEffectiveName())));
 		}
 	}
 	
+	@Override
+	public void onReady (@Nonnull ReadyEvent event) {
+		long id = event.getJDA().getSelfUser().getIdLong();
+		triggers = TriggerEngine.builder()
+		                        .regex("i\\s+love\\s+<@!?" + id + ">", Pattern.CASE_INSENSITIVE, true, this::coffeeLover)
+		                        .build();
+	}
+	
 	@Override
 	public void onMessageReceived (@Nonnull MessageReceivedEvent event) {
+		Member member = event.getMember();
+		
+		if (member != null) {
+			String player = players.get(member.getIdLong());
+			
+			if (player != null && !player.equals(member.getEffectiveName()))
+				players.put(member.getIdLong(), member.getEffectiveName());
+		}
+		
+		triggers.dispatch(event);
+	}
+	
+	private static void suggestion (MessageReceivedEvent event) {
 		Message message = event.getMessage();
+		message.addReaction(Constants.UPVOTE).queue();
+		message.addReaction(Constants.DOWNVOTE).queue();
+	}
+	
+	private void coffeeLover (MessageReceivedEvent event) {
 		Member member = event.getMember();
-		String content = message.getContentRaw();
-		MessageChannel channel = message.getChannel();
 		Guild guild = event.getChannelType().equals(ChannelType.TEXT) ? event.getGuild() : null;
-		long id = jda.getSelfUser().getIdLong();
-		final Pattern coffeeLoverPattern = Pattern.compile("i\\s+love\\s+<@!?" + id + ">", Pattern.CASE_INSENSITIVE);
 		
-		
-		if (member != null && guild != null && coffeeLoverPattern.matcher(content).matches()) {
-			channel.sendMessage("Aww, thank you! " + Constants.BLUSH).queue();
+		if (member != null && guild != null) {
+			event.getChannel().sendMessage("Aww, thank you! " + Constants.BLUSH).queue();
 			guild.addRoleToMember(member, Objects.requireNonNull(guild.getRoleById(Constants.COFFEE_LOVER))).queue();
 		}
-		
-		if (channel.getName().equalsIgnoreCase("suggestions")) {
-			message.addReaction(Constants.UPVOTE).queue();
-			message.addReaction(Constants.DOWNVOTE).queue();
-		}
 	}
 	
 	@Override
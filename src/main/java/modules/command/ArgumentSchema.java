@@ -0,0 +1,399 @@
+package modules.command;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The arguments of a command, compiled once from its arguments string.
+ * Each argument is written as {@code <name>} when required, {@code [name]} when optional or {@code {a|b|c}} when it
+ * is one of several choices, which can also be optional as {@code [a|b|c]}. A required or optional argument can name
+ * its type after a colon, such as {@code <amount:int>} or {@code [target:user]}. The last argument, when it is text,
+ * takes the rest of the message, and every other argument takes a single word.
+ * Messages are tokenized in place over their raw content, so validating them doesn't split or copy it.
+ */
+
+final class ArgumentSchema {
+	
+	static final ArgumentSchema EMPTY = new ArgumentSchema(new Argument[0]);
+	
+	private final Argument[] arguments;
+	private final int required;
+	
+	private ArgumentSchema (Argument[] arguments) {
+		int required = 0;
+		
+		for (Argument argument : arguments) {
+			if (argument.required)
+				required++;
+		}
+		
+		this.arguments = arguments;
+		this.required  = required;
+	}
+	
+	/**
+	 * Compiles the arguments string of a command
+	 *
+	 * @param command   The name of the command, for the message of a syntax error
+	 * @param arguments The arguments string, or null if the command has no arguments
+	 *
+	 * @return The compiled schema
+	 *
+	 * @throws IllegalArgumentException if the arguments string isn't valid, such as unbalanced or nested brackets, or
+	 *                                  a required argument after an optional one
+	 */
+	
+	@NotNull
+	static ArgumentSchema compile (String command, String arguments) {
+		if (arguments == null || arguments.trim().isEmpty())
+			return EMPTY;
+		
+		String message = "Invalid argument syntax at " + command + ": " + arguments;
+		List<Argument> res = new ArrayList<>();
+		int at = 0;
+		
+		while (at < arguments.length()) {
+			char open = arguments.charAt(at);
+			
+			if (Character.isWhitespace(open)) {
+				at++;
+				continue;
+			}
+			
+			char close = closing(open);
+			int end = close == 0 ? -1 : arguments.indexOf(close, at + 1);
+			
+			if (end == -1)
+				throw new IllegalArgumentException(message);
+			
+			for (int i = at + 1; i < end; i++) {
+				if (closing(arguments.charAt(i)) != 0 || isClosing(arguments.charAt(i)))
+					throw new IllegalArgumentException(message);
+			}
+			
+			Argument argument = Argument.parse(open, arguments.substring(at + 1, end).trim(), message);
+			
+			if (argument.required && !res.isEmpty() && !res.get(res.size() - 1).required)
+				throw new IllegalArgumentException(message);
+			
+			res.add(argument);
+			at = end + 1;
+		}
+		
+		return new ArgumentSchema(res.toArray(new Argument[0]));
+	}
+	
+	/**
+	 * @return True if the command takes no arguments
+	 */
+	
+	boolean isEmpty () {
+		return arguments.length == 0;
+	}
+	
+	/**
+	 * @return The amount of arguments of the command
+	 */
+	
+	int size () {
+		return arguments.length;
+	}
+	
+	/**
+	 * @return The amount of required arguments of the command
+	 */
+	
+	int required () {
+		return required;
+	}
+	
+	/**
+	 * Returns the position of an argument
+	 *
+	 * @param name The name of the argument
+	 *
+	 * @return The position of the argument, or -1 if the command has no such argument
+	 */
+	
+	int indexOf (String name) {
+		for (int i = 0; i < arguments.length; i++) {
+			if (arguments[i].name.equalsIgnoreCase(name))
+				return i;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Validates the arguments of a message and locates them in its content
+	 *
+	 * @param content The raw content of the message after the name of the command
+	 *
+	 * @return The located arguments
+	 *
+	 * @throws IllegalArgumentException if the arguments don't match the schema, with a message for the user
+	 */
+	
+	@NotNull
+	Arguments parse (String content) {
+		int end = content.length();
+		
+		while (end > 0 && Character.isWhitespace(content.charAt(end - 1)))
+			end--;
+		
+		int at = skip(content, 0, end);
+		
+		if (arguments.length == 0) {
+			if (at < end)
+				throw new IllegalArgumentException("This command doesn't require arguments");
+			
+			return new Arguments(this, content, null, null, 0);
+		}
+		
+		int[] bounds = new int[arguments.length * 2];
+		long[] values = new long[arguments.length];
+		int count = 0;
+		
+		for (int i = 0; i < arguments.length && at < end; i++) {
+			Argument argument = arguments[i];
+			int to = i == arguments.length - 1 && argument.isText() ? end : word(content, at, end);
+			values[i]         = argument.check(content, at, to);
+			bounds[i * 2]     = at;
+			bounds[i * 2 + 1] = to;
+			count++;
+			at = skip(content, to, end);
+		}
+		
+		if (count < required)
+			throw new IllegalArgumentException("This command requires the argument `" + arguments[count] + "`");
+		
+		if (at < end)
+			throw new IllegalArgumentException("Too many arguments, expected `" + this + "`");
+		
+		return new Arguments(this, content, bounds, values, count);
+	}
+	
+	@Override
+	public String toString () {
+		StringBuilder res = new StringBuilder();
+		
+		for (Argument argument : arguments)
+			res.append(argument).append(' ');
+		
+		return res.toString().trim();
+	}
+	
+	private static char closing (char open) {
+		switch (open) {
+			case '<':
+				return '>';
+			case '[':
+				return ']';
+			case '{':
+				return '}';
+			default:
+				return 0;
+		}
+	}
+	
+	private static boolean isClosing (char c) {
+		return c == '>' || c == ']' || c == '}';
+	}
+	
+	private static int skip (String content, int from, int end) {
+		while (from < end && Character.isWhitespace(content.charAt(from)))
+			from++;
+		
+		return from;
+	}
+	
+	private static int word (String content, int from, int end) {
+		while (from < end && !Character.isWhitespace(content.charAt(from)))
+			from++;
+		
+		return from;
+	}
+	
+	/**
+	 * Types of arguments, which are checked and converted when a message is parsed
+	 */
+	
+	enum Type {
+		TEXT("text", ""),
+		INTEGER("int", ""),
+		USER("user", "<@"),
+		CHANNEL("channel", "<#"),
+		ROLE("role", "<@&");
+		
+		private final String name;
+		private final String mention;
+		
+		Type (String name, String mention) {
+			this.name    = name;
+			this.mention = mention;
+		}
+		
+		private static Type of (String name) {
+			for (Type type : values()) {
+				if (type.name.equalsIgnoreCase(name))
+					return type;
+			}
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * A single compiled argument
+	 */
+	
+	private static final class Argument {
+		
+		private final String name;
+		private final boolean required;
+		private final Type type;
+		private final String[] choices;
+		
+		private Argument (String name, boolean required, Type type, String[] choices) {
+			this.name     = name;
+			this.required = required;
+			this.type     = type;
+			this.choices  = choices;
+		}
+		
+		private static Argument parse (char open, String body, String message) {
+			if (body.isEmpty())
+				throw new IllegalArgumentException(message);
+			
+			if (open == '{' || body.indexOf('|') != -1) {
+				if (open == '<')
+					throw new IllegalArgumentException(message);
+				
+				String[] choices = body.split("\\|", -1);
+				
+				for (int i = 0; i < choices.length; i++) {
+					choices[i] = choices[i].trim();
+					
+					if (choices[i].isEmpty())
+						throw new IllegalArgumentException(message);
+				}
+				
+				return new Argument(body, open == '{', Type.TEXT, choices);
+			}
+			
+			int colon = body.indexOf(':');
+			Type type = colon == -1 ? Type.TEXT : Type.of(body.substring(colon + 1).trim());
+			
+			if (type == null)
+				throw new IllegalArgumentException(message);
+			
+			return new Argument(colon == -1 ? body : body.substring(0, colon).trim(), open == '<', type, null);
+		}
+		
+		private boolean isText () {
+			return type == Type.TEXT && choices == null;
+		}
+		
+		/**
+		 * Checks a word of a message against this argument
+		 *
+		 * @param content The content of the message
+		 * @param from    Offset of the first character of the word
+		 * @param to      Offset right after the last character of the word
+		 *
+		 * @return The position of the matching choice, the integer, the mentioned ID, or 0 for text
+		 *
+		 * @throws IllegalArgumentException if the word doesn't match the argument
+		 */
+		
+		private long check (String content, int from, int to) {
+			if (choices != null) {
+				for (int i = 0; i < choices.length; i++) {
+					if (choices[i].length() == to - from && content.regionMatches(true, from, choices[i], 0, to - from))
+						return i;
+				}
+				
+				throw new IllegalArgumentException(
+						"`" + content.substring(from, to) + "` must be one of `" + String.join(", ", choices) + "`");
+			}
+			
+			switch (type) {
+				case INTEGER:
+					return number(content, from, to, true);
+				case USER:
+				case CHANNEL:
+				case ROLE:
+					return mention(content, from, to);
+				default:
+					return 0;
+			}
+		}
+		
+		private long mention (String content, int from, int to) {
+			if (content.startsWith(type.mention, from) && to - from > type.mention.length() + 1 &&
+			    content.charAt(to - 1) == '>') {
+				int start = from + type.mention.length();
+				
+				if (type == Type.USER && content.charAt(start) == '!')
+					start++;
+				
+				try {
+					return number(content, start, to - 1, false);
+				} catch (IllegalArgumentException e) {
+					throw invalid(content, from, to);
+				}
+			}
+			
+			return number(content, from, to, false);
+		}
+		
+		/**
+		 * Parses a decimal number in place
+		 *
+		 * @param content The content of the message
+		 * @param from    Offset of the first character of the number
+		 * @param to      Offset right after the last character of the number
+		 * @param signed  Can the number be negative or not
+		 *
+		 * @return The number
+		 *
+		 * @throws IllegalArgumentException if the characters aren't a number that fits in a long
+		 */
+		
+		private long number (String content, int from, int to, boolean signed) {
+			boolean negative = signed && from < to && content.charAt(from) == '-';
+			long res = 0;
+			int i = negative ? from + 1 : from;
+			
+			if (i == to)
+				throw invalid(content, from, to);
+			
+			for (; i < to; i++) {
+				int digit = content.charAt(i) - '0';
+				
+				if (digit < 0 || digit > 9 || res > (Long.MAX_VALUE - digit) / 10)
+					throw invalid(content, from, to);
+				
+				res = res * 10 + digit;
+			}
+			
+			return negative ? -res : res;
+		}
+		
+		private IllegalArgumentException invalid (String content, int from, int to) {
+			return new IllegalArgumentException("`" + content.substring(from, to) + "` isn't a valid " + name +
+			                                    (type == Type.TEXT ? "" : " (" + type.name + ")"));
+		}
+		
+		@Override
+		public String toString () {
+			if (choices != null)
+				return (required ? "{" : "[") + name + (required ? "}" : "]");
+			
+			String body = type == Type.TEXT ? name : name + ":" + type.name;
+			return required ? "<" + body + ">" : "[" + body + "]";
+		}
+	}
+}
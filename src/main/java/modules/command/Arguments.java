@@ -0,0 +1,118 @@
+package modules.command;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The arguments of a single message, located by their offsets in its content.
+ * Integers and mentioned IDs are parsed once while validating, and text is only copied out of the content when it's
+ * asked for.
+ */
+
+final class Arguments {
+	
+	private final ArgumentSchema schema;
+	private final String content;
+	private final int[] bounds;
+	private final long[] values;
+	private final int size;
+	
+	Arguments (ArgumentSchema schema, String content, int[] bounds, long[] values, int size) {
+		this.schema  = schema;
+		this.content = content;
+		this.bounds  = bounds;
+		this.values  = values;
+		this.size    = size;
+	}
+	
+	/**
+	 * @return The amount of arguments given in the message
+	 */
+	
+	int size () {
+		return size;
+	}
+	
+	/**
+	 * @param index The position of the argument
+	 *
+	 * @return True if the argument was given
+	 */
+	
+	boolean has (int index) {
+		return index >= 0 && index < size;
+	}
+	
+	/**
+	 * @param name The name of the argument
+	 *
+	 * @return True if the argument was given
+	 */
+	
+	boolean has (String name) {
+		return has(schema.indexOf(name));
+	}
+	
+	/**
+	 * Returns the text of an argument
+	 *
+	 * @param index The position of the argument
+	 *
+	 * @return The text of the argument, or null if it wasn't given
+	 */
+	
+	@Nullable
+	String getString (int index) {
+		return has(index) ? content.substring(bounds[index * 2], bounds[index * 2 + 1]) : null;
+	}
+	
+	/**
+	 * Returns the text of an argument
+	 *
+	 * @param name The name of the argument
+	 *
+	 * @return The text of the argument, or null if it wasn't given
+	 */
+	
+	@Nullable
+	String getString (String name) {
+		return getString(schema.indexOf(name));
+	}
+	
+	/**
+	 * Returns the value of an integer argument, or the ID of a user, channel or role argument
+	 *
+	 * @param index The position of the argument
+	 * @param def   The value to return if the argument wasn't given
+	 *
+	 * @return The value of the argument
+	 */
+	
+	long getLong (int index, long def) {
+		return has(index) ? values[index] : def;
+	}
+	
+	/**
+	 * Returns the value of an integer argument, or the ID of a user, channel or role argument
+	 *
+	 * @param name The name of the argument
+	 * @param def  The value to return if the argument wasn't given
+	 *
+	 * @return The value of the argument
+	 */
+	
+	long getLong (String name, long def) {
+		return getLong(schema.indexOf(name), def);
+	}
+	
+	/**
+	 * Returns the position of the choice given for a choice argument
+	 *
+	 * @param index The position of the argument
+	 *
+	 * @return The position of the choice within the argument, or -1 if the argument wasn't given
+	 */
+	
+	int getChoice (int index) {
+		return has(index) ? (int) values[index] : -1;
+	}
+}
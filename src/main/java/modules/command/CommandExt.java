@@ -4,12 +4,14 @@ import bot.Constants;
 import bot.Main;
 import com.jagrosh.jdautilities.command.Command;
 import com.jagrosh.jdautilities.command.CommandEvent;
-import jdk.nashorn.internal.runtime.regexp.joni.exception.SyntaxException;
+import modules.schedule.Scheduler;
+import modules.util.LongMap;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.Role;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.*;
+import java.util.List;
 
 abstract class CommandExt extends Command {
 	
@@ -20,114 +22,110 @@ abstract class CommandExt extends Command {
 	protected String description;
 	protected String usage;
 	protected String example;
-	protected long[] channels = new long[] {Constants.COFFEE, Constants.BOT_SPAM};
+	private ArgumentSchema schema;
+	// The channels the command can be used in by members who aren't staff, by ID, or null for every channel
+	private LongMap<Boolean> channels;
 	
-	private void validateArgs () {
-		Deque<String> check = new ArrayDeque<>();
-		
-		for (String par : usage.split("")) {
-			String message = "Invalid argument syntax at " + this.name;
-			
-			switch (par) {
-				case "<":
-				case "[":
-				case "{":
-					check.push(par);
-					break;
-				case ">":
-					if (Objects.requireNonNull(check.peek()).equals("<"))
-						check.pop();
-					else
-						throw new SyntaxException(message);
-					break;
-				case "]":
-					if (Objects.requireNonNull(check.peek()).equals("]"))
-						check.pop();
-					else
-						throw new SyntaxException(message);
-					break;
-				case "}":
-					if (Objects.requireNonNull(check.peek()).equals("}"))
-						check.pop();
-					else
-						throw new SyntaxException(message);
-					break;
-				default:
-					break;
-			}
+	protected CommandExt () {
+		setChannels(Constants.COFFEE, Constants.BOT_SPAM);
+	}
+	
+	/**
+	 * Sets the channels the command can be used in by members who aren't staff. Commands that aren't limited to the
+	 * default channels call it in their constructor.
+	 *
+	 * @param ids The IDs of the channels, or null to allow every channel
+	 */
+	
+	protected final void setChannels (@Nullable long... ids) {
+		if (ids == null) {
+			channels = null;
+			return;
 		}
+		
+		LongMap<Boolean> channels = new LongMap<>(ids.length);
+		
+		for (long id : ids)
+			channels.put(id, Boolean.TRUE);
+		
+		this.channels = channels;
 	}
 	
-	private int isArgs () {
-		boolean req = usage.contains("<");
-		boolean opt = usage.contains("[");
-		if (!req && !opt)
-			return 0;
-		if (opt && !req)
-			return 1;
-		if (!opt)
-			return 2;
-		if (usage.indexOf('<') < usage.indexOf('['))
-			return 3;
-		if (usage.indexOf('<') > usage.indexOf('['))
-			return 4;
-		return -1;
+	/**
+	 * Compiles the arguments string of the command. Commands call it at the end of their constructor, once their
+	 * arguments are set, so an invalid arguments string fails as the command is created.
+	 *
+	 * @throws IllegalArgumentException if the arguments string isn't valid
+	 */
+	
+	protected final void compileArguments () {
+		schema = ArgumentSchema.compile(name, arguments);
+	}
+	
+	private ArgumentSchema schema () {
+		if (schema == null)
+			compileArguments();
+		
+		return schema;
 	}
 	
 	private String getAvailableChannels () {
 		StringBuilder message = new StringBuilder();
 		
-		for (long ch : channels)
+		for (long ch : channels.keys())
 			message.append(Main.getChannel(ch).getAsMention()).append(" ");
 		
 		return message.toString();
 	}
 	
-	private boolean preValidate (CommandEvent event) {
+	@Nullable
+	private Arguments preValidate (CommandEvent event) {
 		if (event.getAuthor().isBot() || event.getAuthor().isFake())
-			return false;
+			return null;
 		
-		List<Role> roles = event.getMember().getRoles();
-		Guild guild = event.getGuild();
 		MessageChannel channel = event.getChannel();
-		int length = event.getMessage().getContentRaw().split(" ").length;
-		int args = isArgs();
+		Arguments args;
 		
-		if (args == 0) {
-			if (length > 1) {
-				event.replyError("This command doesn't require arguments");
-				return false;
-			}
-		} else if ((args == 2 || args == 3) && length <= 1) {
-			event.replyError("This command requires arguments");
-			return false;
+		try {
+			args = schema().parse(event.getArgs());
+		} catch (IllegalArgumentException e) {
+			event.replyError(e.getMessage());
+			return null;
 		}
 		
-		if ((channels != null && guildOnly) && (!contains(channels, channel.getIdLong()) &&
-		                                        !roles.contains(guild.getRoleById(Constants.LEADER)) &&
-		                                        !roles.contains(guild.getRoleById(Constants.CHIEF)))) {
+		if (guildOnly && !isAllowed(channel.getIdLong()) && !isStaff(event)) {
 			event.getMessage().delete().queue();
 			channel.sendMessage("You cannot use this command here!\n" + "Available channels: " + getAvailableChannels())
-			       .queue(message -> new Timer().schedule(new TimerTask() {
-				       @Override
-				       public void run () {
-					       message.delete().queue();
-				       }
-			       }, Constants.DELETION_DELAY));
-			return false;
+			       .queue(message -> Scheduler.deleteLater(message, Constants.DELETION_DELAY));
+			return null;
 		}
-		return true;
+		return args;
 	}
 	
-	private boolean contains (long[] channels, long idLong) {
-		for (long l : channels) {
-			if (l == idLong)
-				return true;
-		}
-		return false;
+	private boolean isStaff (CommandEvent event) {
+		List<Role> roles = event.getMember().getRoles();
+		Guild guild = event.getGuild();
+		return roles.contains(guild.getRoleById(Constants.LEADER)) || roles.contains(guild.getRoleById(Constants.CHIEF));
+	}
+	
+	private boolean isAllowed (long id) {
+		return channels == null || channels.containsKey(id);
 	}
 	
 	public boolean validate (CommandEvent event) {
+		return preValidate(event) != null;
+	}
+	
+	/**
+	 * Validates a command event like {@link #validate(CommandEvent)}, and returns its arguments
+	 *
+	 * @param event The event of the command
+	 *
+	 * @return The arguments of the command, or null if the event isn't valid
+	 */
+	
+	@Nullable
+	Arguments validateArgs (CommandEvent event) {
 		return preValidate(event);
 	}
 	
@@ -22,6 +22,7 @@ public class ExampleCommand extends CommandExt {
 		this.guildOnly       = true;
 		this.help            = "`" + this.usage + "`" + "\n" + this.description + "\n`" + this.example + "`";
 		this.helpBiConsumer  = (event, command) -> event.reply(HelpBuilder.build(this));
+		compileArguments();
 	}
 	
 	@Override
@@ -3,20 +3,120 @@ package modules.command;
 import bot.Constants;
 import bot.Main;
 import com.jagrosh.jdautilities.command.Command;
+import com.jagrosh.jdautilities.command.CommandEvent;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.ChannelType;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-class HelpBuilder {
+/**
+ * Builds the help embeds of commands.
+ * The inputs of a help embed are fixed once its command is created, so each embed is built on its first request and
+ * then reused. The full listing of commands is split into pages that are built once for the registered commands, and
+ * built again only when the commands of the client change.
+ */
+
+public class HelpBuilder {
+	
+	private static final int PAGE_SIZE = 10;
+	private static final Map<Command, MessageEmbed> EMBEDS = new ConcurrentHashMap<>();
+	private static volatile Listing listing = new Listing(Collections.emptyList());
 	
 	private HelpBuilder () {
 	}
 	
+	/**
+	 * Returns the help embed of a command
+	 *
+	 * @param command The command
+	 *
+	 * @return The cached help embed of the command
+	 */
+	
 	static MessageEmbed build (CommandExt command) {
+		return EMBEDS.computeIfAbsent(command, key -> create(command));
+	}
+	
+	/**
+	 * Replies to a help request with a page of the listing of commands, or with the help of a single command. Like
+	 * the default help of the command client, the help is sent by direct message, and a request from a server channel
+	 * is answered there with a reaction, or with a warning if the member blocks direct messages.
+	 *
+	 * @param event The event of the help command, whose arguments are a page number, a command name or nothing
+	 */
+	
+	public static void help (CommandEvent event) {
+		String args = event.getArgs().trim();
+		Listing current = listing(event.getClient().getCommands());
+		int page = args.isEmpty() ? 1 : page(args);
+		
+		if (page >= 1 && page <= current.pages.length) {
+			replyInDm(event, current.pages[page - 1]);
+			return;
+		}
+		
+		for (Command command : current.commands) {
+			if (command instanceof CommandExt && !command.isHidden() && command.isCommandFor(args)) {
+				replyInDm(event, build((CommandExt) command));
+				return;
+			}
+		}
+		
+		event.replyError("There is no help page or command `" + args + "`");
+	}
+	
+	private static void replyInDm (CommandEvent event, MessageEmbed embed) {
+		event.replyInDm(embed, message -> {
+			if (event.isFromType(ChannelType.TEXT))
+				event.reactSuccess();
+		}, error -> event.replyWarning("Help cannot be sent because you are blocking Direct Messages."));
+	}
+	
+	/**
+	 * Returns the listing of the registered commands, and builds it again if they changed since it was built
+	 *
+	 * @param commands The registered commands
+	 *
+	 * @return The listing of the commands
+	 */
+	
+	private static Listing listing (List<Command> commands) {
+		Listing current = listing;
+		
+		if (current.isOf(commands))
+			return current;
+		
+		synchronized (HelpBuilder.class) {
+			current = listing;
+			
+			if (!current.isOf(commands)) {
+				current = new Listing(commands);
+				EMBEDS.keySet().retainAll(current.commands);
+				listing = current;
+			}
+		}
+		
+		return current;
+	}
+	
+	private static int page (String args) {
+		try {
+			return Integer.parseInt(args);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	private static MessageEmbed create (CommandExt command) {
 		String name = command.getName();
 		String newLine = "`\n";
-		String title = name.replace(name.charAt(0), name.substring(0, 1).toUpperCase().toCharArray()[0]) + " Help";
+		String title = Character.toUpperCase(name.charAt(0)) + name.substring(1) + " Help";
 		return Main.embed(title,
 		                  null,
 		                  null,
@@ -74,4 +174,87 @@ class HelpBuilder {
 			res.append(c.getName()).append(", ");
 		return res.substring(0, res.length() - 2);
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Pages of the listing of commands, and the commands they were built from
+	 */
+	
+	private static final class Listing {
+		
+		private final List<Command> commands;
+		private final MessageEmbed[] pages;
+		
+		private Listing (List<Command> commands) {
+			this.commands = new ArrayList<>(commands);
+			this.pages    = paginate(this.commands);
+		}
+		
+		/**
+		 * @param commands The registered commands
+		 *
+		 * @return True if the listing was built from the same commands, in the same order
+		 */
+		
+		private boolean isOf (List<Command> commands) {
+			if (commands.size() != this.commands.size())
+				return false;
+			
+			for (int i = 0; i < commands.size(); i++) {
+				if (commands.get(i) != this.commands.get(i))
+					return false;
+			}
+			
+			return true;
+		}
+		
+		private static MessageEmbed[] paginate (List<Command> commands) {
+			List<Command> visible = new ArrayList<>();
+			
+			for (Command command : commands) {
+				if (!command.isHidden())
+					visible.add(command);
+			}
+			
+			int count = Math.max(1, (visible.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+			MessageEmbed[] pages = new MessageEmbed[count];
+			
+			for (int page = 0; page < count; page++) {
+				StringBuilder content = new StringBuilder();
+				String category = null;
+				
+				int end = Math.min(visible.size(), (page + 1) * PAGE_SIZE);
+				
+				for (Command command : visible.subList(page * PAGE_SIZE, end)) {
+					String current = command.getCategory() == null ? "No Category" : command.getCategory().getName();
+					
+					if (!current.equals(category))
+						content.append(category == null ? "" : "\n").append("**").append(current).append("**\n");
+					
+					category = current;
+					content.append('`').append(Constants.PREFIX).append(command.getName());
+					
+					if (command.getArguments() != null && !command.getArguments().isEmpty())
+						content.append(' ').append(command.getArguments());
+					
+					String description = command instanceof CommandExt
+					                     ? ((CommandExt) command).description
+					                     : command.getHelp();
+					content.append("` - ").append(description).append('\n');
+				}
+				
+				pages[page] = Main.embed("Commands",
+				                         null,
+				                         null,
+				                         visible.isEmpty() ? "There are no commands" : content.toString(),
+				                         Color.CYAN,
+				                         "Page " + (page + 1) + "/" + count + " | " + Constants.PREFIX +
+				                         "help <page/command>",
+				                         null,
+				                         Constants.HELP_ICON,
+				                         null);
+			}
+			
+			return pages;
+		}
+	}
+}
@@ -24,6 +24,7 @@ public class MagicShellCommand extends CommandExt {
 		this.guildOnly       = false;
 		this.help            = "`" + this.usage + "`" + "\n" + this.description + "\n`" + this.example + "`";
 		this.helpBiConsumer  = (event, command) -> event.reply(HelpBuilder.build(this));
+		compileArguments();
 	}
 	
 	@Override
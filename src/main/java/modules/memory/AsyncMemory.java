@@ -0,0 +1,298 @@
+package modules.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous variants of the Memory methods, for callers that must not block on disk such as event listeners and
+ * commands. Calls run on a small pool of I/O threads, calls on the same file run one after the other in the order they
+ * were made, and calls on different files run in parallel.
+ * The amount of calls waiting to run is bounded: once the queue is full, new calls fail right away with a
+ * {@link RejectedExecutionException} instead of piling up behind a slow disk.
+ * The returned futures complete on an I/O thread once the file is free again, so dependent stages may wait on other
+ * calls on the same file, but long work should continue with the async stages of the future.
+ */
+
+@SuppressWarnings("unused")
+public final class AsyncMemory {
+	
+	private static final int THREADS = 4;
+	private static final int DEFAULT_QUEUE_DEPTH = 1024;
+	private static final ExecutorService EXECUTOR = executor();
+	private static final Map<Path, Queue<Runnable>> LANES = new HashMap<>();
+	private static final AtomicInteger DEPTH = new AtomicInteger();
+	private static volatile int queueDepth = DEFAULT_QUEUE_DEPTH;
+	
+	private AsyncMemory () {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * @see Memory#readFile(String)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<String> readFile (String path) {
+		return submit(path, () -> Memory.readFile(path));
+	}
+	
+	/**
+	 * @see Memory#readFile(String, long, long)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<String> readFile (String path, long start, long end) {
+		return submit(path, () -> Memory.readFile(path, start, end));
+	}
+	
+	/**
+	 * @see Memory#goLine(String, long)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<String> goLine (String path, long line) {
+		return submit(path, () -> Memory.goLine(path, line));
+	}
+	
+	/**
+	 * @see Memory#countLines(String)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Integer> countLines (String path) {
+		return submit(path, () -> {
+			try {
+				return Memory.countLines(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+	
+	/**
+	 * @see Memory#find(String, String, boolean, boolean)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Boolean> find (String path, String keyword, boolean ignoreCase,
+	                                               boolean keywordIsLine) {
+		return submit(path, () -> Memory.find(path, keyword, ignoreCase, keywordIsLine));
+	}
+	
+	/**
+	 * @see Memory#findLine(String, String, boolean, boolean)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Long> findLine (String path, String keyword, boolean ignoreCase,
+	                                                boolean keywordIsLine) {
+		return submit(path, () -> Memory.findLine(path, keyword, ignoreCase, keywordIsLine));
+	}
+	
+	/**
+	 * @see Memory#findLines(String, String, boolean, boolean)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<long[]> findLines (String path, String keyword, boolean ignoreCase,
+	                                                   boolean keywordIsLine) {
+		return submit(path, () -> Memory.findLines(path, keyword, ignoreCase, keywordIsLine));
+	}
+	
+	/**
+	 * @see Memory#writeFile(String, String)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Void> writeFile (String path, String value) {
+		return submit(path, () -> {
+			Memory.writeFile(path, value);
+			return null;
+		});
+	}
+	
+	/**
+	 * @see Memory#appendAll(String, Collection)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Void> appendAll (String path, Collection<String> values) {
+		return submit(path, () -> {
+			Memory.appendAll(path, values);
+			return null;
+		});
+	}
+	
+	/**
+	 * @see Memory#overwriteFile(String, Collection)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Void> overwriteFile (String path, Collection<String> values) {
+		return submit(path, () -> {
+			Memory.overwriteFile(path, values);
+			return null;
+		});
+	}
+	
+	/**
+	 * @see Memory#writeFile(String, String, long, boolean)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Void> writeFile (String path, String value, long line, boolean overwrite) {
+		return submit(path, () -> {
+			Memory.writeFile(path, value, line, overwrite);
+			return null;
+		});
+	}
+	
+	/**
+	 * @see Memory#deleteLine(String, long)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Void> deleteLine (String path, long line) {
+		return submit(path, () -> {
+			Memory.deleteLine(path, line);
+			return null;
+		});
+	}
+	
+	/**
+	 * @see Memory#replace(String, String, String, boolean, boolean)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Boolean> replace (String path, String oldValue, String newValue,
+	                                                  boolean ignoreCase, boolean keywordIsLine) {
+		return submit(path, () -> Memory.replace(path, oldValue, newValue, ignoreCase, keywordIsLine));
+	}
+	
+	/**
+	 * @see Memory#replaceAll(String, String, String, boolean, boolean)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Integer> replaceAll (String path, String oldValue, String newValue,
+	                                                     boolean ignoreCase, boolean keywordIsLine) {
+		return submit(path, () -> Memory.replaceAll(path, oldValue, newValue, ignoreCase, keywordIsLine));
+	}
+	
+	/**
+	 * @see Memory#edit(String, Consumer)
+	 */
+	
+	@NotNull
+	public static CompletableFuture<Boolean> edit (String path, Consumer<Edit> ops) {
+		return submit(path, () -> Memory.edit(path, ops));
+	}
+	
+	/**
+	 * Sets how many calls may wait to run before new calls are rejected
+	 *
+	 * @param depth The maximal amount of waiting calls
+	 */
+	
+	public static void setQueueDepth (int depth) {
+		queueDepth = Math.max(1, depth);
+	}
+	
+	/**
+	 * Runs a call after the previous calls on the same file
+	 *
+	 * @param path Path of the file the call works on
+	 * @param call The call
+	 * @param <T>  Type of the result of the call
+	 *
+	 * @return The result of the call
+	 */
+	
+	private static <T> CompletableFuture<T> submit (String path, Supplier<T> call) {
+		CompletableFuture<T> res = new CompletableFuture<>();
+		
+		if (DEPTH.incrementAndGet() > queueDepth) {
+			DEPTH.decrementAndGet();
+			res.completeExceptionally(new RejectedExecutionException("Too many Memory calls are waiting to run"));
+			return res;
+		}
+		
+		Path file = Memory.key(path);
+		Runnable task = () -> {
+			T result = null;
+			Throwable failure = null;
+			
+			try {
+				result = call.get();
+			} catch (Throwable e) {
+				failure = e;
+			} finally {
+				DEPTH.decrementAndGet();
+				next(file);
+			}
+			
+			// The file is released first, so stages waiting on another call on the same file don't block it
+			if (failure == null)
+				res.complete(result);
+			else
+				res.completeExceptionally(failure);
+		};
+		
+		synchronized (LANES) {
+			Queue<Runnable> lane = LANES.get(file);
+			
+			if (lane != null) {
+				lane.add(task);
+				return res;
+			}
+			
+			LANES.put(file, new ArrayDeque<>());
+		}
+		
+		EXECUTOR.execute(task);
+		return res;
+	}
+	
+	/**
+	 * Runs the next waiting call on a file, if there is one
+	 *
+	 * @param file Path of the file
+	 */
+	
+	private static void next (Path file) {
+		Runnable task;
+		
+		synchronized (LANES) {
+			task = LANES.get(file).poll();
+			
+			if (task == null)
+				LANES.remove(file);
+		}
+		
+		if (task != null)
+			EXECUTOR.execute(task);
+	}
+	
+	private static ExecutorService executor () {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+		                                                     new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "memory-io");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
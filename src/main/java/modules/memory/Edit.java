@@ -0,0 +1,188 @@
+package modules.memory;
+
+import java.util.List;
+
+/**
+ * Changes to the lines of a single file that are committed together by {@link Memory#edit}.
+ * Every change is applied right away to an in-memory view of the file, so line numbers and reads always refer to
+ * the file as it is after the previous changes. The file itself is rewritten once, after the last change.
+ */
+
+public final class Edit {
+	
+	private final List<String> lines;
+	
+	Edit (List<String> lines) {
+		this.lines = lines;
+	}
+	
+	/**
+	 * @return The amount of lines in the file
+	 */
+	
+	public int lines () {
+		return lines.size();
+	}
+	
+	/**
+	 * Returns the content of a specific line
+	 *
+	 * @param line Number of the line, starting from 1
+	 *
+	 * @return The content of the line, or an empty string if the file has no such line
+	 */
+	
+	public String line (long line) {
+		return line < 1 || line > lines.size() ? "" : lines.get((int) line - 1);
+	}
+	
+	/**
+	 * Write a value into the last line of the file
+	 *
+	 * @param value The value to write
+	 *
+	 * @return This edit
+	 */
+	
+	public Edit append (String value) {
+		lines.add(value);
+		return this;
+	}
+	
+	/**
+	 * Insert a value after a line
+	 *
+	 * @param line  Number of the line to insert after, 0 to insert at the start of the file
+	 * @param value The value to insert
+	 *
+	 * @return This edit
+	 */
+	
+	public Edit insert (long line, String value) {
+		lines.add(clamp(line), value);
+		return this;
+	}
+	
+	/**
+	 * Replace the content of a line, or write the value into the last line if the file has no such line
+	 *
+	 * @param line  Number of the line, starting from 1
+	 * @param value The new content of the line
+	 *
+	 * @return This edit
+	 */
+	
+	public Edit overwrite (long line, String value) {
+		int index = clamp(line - 1);
+		
+		if (index < lines.size())
+			lines.set(index, value);
+		else
+			lines.add(value);
+		
+		return this;
+	}
+	
+	/**
+	 * Delete a line
+	 *
+	 * @param line Number of the line, starting from 1
+	 *
+	 * @return True if the file had such line
+	 */
+	
+	public boolean delete (long line) {
+		if (line < 1 || line > lines.size())
+			return false;
+		
+		lines.remove((int) line - 1);
+		return true;
+	}
+	
+	/**
+	 * Delete every line of the file
+	 *
+	 * @return This edit
+	 */
+	
+	public Edit clear () {
+		lines.clear();
+		return this;
+	}
+	
+	/**
+	 * Replace a value in the first line that contains it
+	 *
+	 * @param oldValue      The value to replace
+	 * @param newValue      The value to replace with
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the value a whole line or a part of a line in the file
+	 *
+	 * @return True if the value was replaced
+	 */
+	
+	public boolean replace (String oldValue, String newValue, boolean ignoreCase, boolean keywordIsLine) {
+		Keyword match = Memory.keyword(oldValue, ignoreCase, keywordIsLine);
+		
+		for (int i = 0; i < lines.size(); i++) {
+			if (match.test(lines.get(i))) {
+				lines.set(i, Memory.replaceInLine(lines.get(i), oldValue, newValue, ignoreCase));
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Replace a value in a specific line
+	 *
+	 * @param oldValue      The value to replace
+	 * @param newValue      The value to replace with
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the value a whole line or a part of a line in the file
+	 * @param line          Number of the line, starting from 1
+	 *
+	 * @return True if the value was replaced
+	 */
+	
+	public boolean replace (String oldValue, String newValue, boolean ignoreCase, boolean keywordIsLine, long line) {
+		int index = (int) line - 1;
+		
+		if (line < 1 || line > lines.size() ||
+		    !Memory.findInLine(lines.get(index), oldValue, ignoreCase, keywordIsLine))
+			return false;
+		
+		lines.set(index, Memory.replaceInLine(lines.get(index), oldValue, newValue, ignoreCase));
+		return true;
+	}
+	
+	/**
+	 * Replace a value in every line that contains it
+	 *
+	 * @param oldValue      The value to replace
+	 * @param newValue      The value to replace with
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the value a whole line or a part of a line in the file
+	 *
+	 * @return The amount of lines the value was replaced in
+	 */
+	
+	public int replaceAll (String oldValue, String newValue, boolean ignoreCase, boolean keywordIsLine) {
+		Keyword match = Memory.keyword(oldValue, ignoreCase, keywordIsLine);
+		int count = 0;
+		
+		for (int i = 0; i < lines.size(); i++) {
+			if (match.test(lines.get(i))) {
+				lines.set(i, Memory.replaceInLine(lines.get(i), oldValue, newValue, ignoreCase));
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	private int clamp (long line) {
+		return (int) Math.max(0, Math.min(line, lines.size()));
+	}
+}
@@ -0,0 +1,318 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-through cache of the lines of files managed by Memory.
+ * Entries are dropped when the size or modification time of their file changes, and the least recently used entries
+ * are evicted once the cached files exceed the byte budget.
+ */
+
+final class FileCache {
+	
+	static final long DEFAULT_BUDGET = 4L * 1024 * 1024;
+	
+	private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Charset charset;
+	private long budget = DEFAULT_BUDGET;
+	private long used;
+	
+	FileCache (Charset charset) {
+		this.charset = charset;
+	}
+	
+	/**
+	 * Returns the cached lines of a file, loading them if the file fits in the budget
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The cached entry of the file, or null if the file is too large to be cached
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	Entry get (Path file) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		
+		synchronized (this) {
+			Entry entry = entries.get(file);
+			
+			if (entry != null && entry.size == size && entry.modified == modified)
+				return entry;
+			
+			remove(file);
+			
+			if (size > budget)
+				return null;
+		}
+		
+		byte[] bytes = Files.readAllBytes(file);
+		MemoryMetrics.read(file, bytes.length);
+		return put(file, new String(bytes, charset), size, modified);
+	}
+	
+	/**
+	 * Returns lines cached under a key of their own, such as the lines of a file that aren't marked as deleted
+	 *
+	 * @param key      The key of the lines
+	 * @param size     The size of the file the lines were read from
+	 * @param modified The version of the lines
+	 *
+	 * @return The cached lines, or null if they aren't cached for this size and version
+	 */
+	
+	synchronized Entry get (Path key, long size, long modified) {
+		Entry entry = entries.get(key);
+		return entry != null && entry.size == size && entry.modified == modified ? entry : null;
+	}
+	
+	/**
+	 * @param size The size of a file in bytes
+	 *
+	 * @return True if the file fits in the budget
+	 */
+	
+	synchronized boolean fits (long size) {
+		return size <= budget;
+	}
+	
+	/**
+	 * Replaces the cached lines of a file after Memory wrote to it
+	 *
+	 * @param file     Path of the file
+	 * @param content  The new content of the file
+	 * @param size     The size of the file in bytes
+	 * @param modified The modification time of the file
+	 *
+	 * @return The new entry, or null if the file is too large to be cached
+	 */
+	
+	synchronized Entry put (Path file, String content, long size, long modified) {
+		remove(file);
+		
+		if (size > budget)
+			return null;
+		
+		return put(file, split(content), content.endsWith("\n"), size, modified);
+	}
+	
+	/**
+	 * Replaces the cached lines of a file after Memory wrote them to it
+	 *
+	 * @param file     Path of the file
+	 * @param lines    The new lines of the file
+	 * @param newLine  Does the file end with a line break
+	 * @param size     The size of the file in bytes
+	 * @param modified The modification time of the file
+	 *
+	 * @return The new entry, or null if the file is too large to be cached
+	 */
+	
+	synchronized Entry put (Path file, String[] lines, boolean newLine, long size, long modified) {
+		remove(file);
+		
+		if (size > budget)
+			return null;
+		
+		Entry entry = new Entry(lines, newLine, size, modified);
+		entries.put(file, entry);
+		used += size;
+		evict();
+		
+		return entry;
+	}
+	
+	/**
+	 * Extends the cached lines of a file after Memory appended to it
+	 *
+	 * @param file     Path of the file
+	 * @param previous The entry of the file before the append, or null if it wasn't cached
+	 * @param text     The appended text
+	 * @param size     The size of the file in bytes
+	 * @param modified The modification time of the file
+	 */
+	
+	synchronized void append (Path file, Entry previous, String text, long size, long modified) {
+		if (previous == null || entries.get(file) != previous || size > budget) {
+			remove(file);
+			return;
+		}
+		
+		String[] appended = split(text);
+		List<String> lines = new ArrayList<>(previous.lines.length + appended.length);
+		Collections.addAll(lines, previous.lines);
+		
+		for (int i = 0; i < appended.length; i++) {
+			if (i == 0 && !previous.newLine && !lines.isEmpty())
+				lines.set(lines.size() - 1, lines.get(lines.size() - 1) + appended[0]);
+			else
+				lines.add(appended[i]);
+		}
+		
+		remove(file);
+		entries.put(file, new Entry(lines.toArray(new String[0]),
+		                            text.isEmpty() ? previous.newLine : text.endsWith("\n"),
+		                            size,
+		                            modified));
+		used += size;
+		evict();
+	}
+	
+	/**
+	 * Drops the cached lines of a file
+	 *
+	 * @param file Path of the file
+	 */
+	
+	synchronized void remove (Path file) {
+		Entry entry = entries.remove(file);
+		
+		if (entry != null)
+			used -= entry.size;
+	}
+	
+	/**
+	 * Sets the maximal amount of bytes of files the cache holds. A budget of 0 disables the cache.
+	 *
+	 * @param budget The budget in bytes
+	 */
+	
+	synchronized void setBudget (long budget) {
+		this.budget = Math.max(0, budget);
+		evict();
+	}
+	
+	private void evict () {
+		Iterator<Entry> iterator = entries.values().iterator();
+		
+		while (used > budget && iterator.hasNext()) {
+			used -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Wraps lines that aren't cached, such as a filtered view of a file, so they can be read like cached lines
+	 *
+	 * @param lines   The lines
+	 * @param newLine Do the lines end with a line break
+	 *
+	 * @return An entry that isn't part of the cache
+	 */
+	
+	static Entry view (String[] lines, boolean newLine) {
+		return new Entry(lines, newLine, 0, 0);
+	}
+	
+	/**
+	 * Splits appended text into the lines it adds. Unlike content, appended text is a list of values joined by line
+	 * breaks, so an empty last value is a line of its own.
+	 *
+	 * @param text The appended text
+	 *
+	 * @return The appended lines, without line breaks
+	 */
+	
+	static String[] values (String text) {
+		return split(text + "\n");
+	}
+	
+	/**
+	 * Splits content into lines the way BufferedReader does for line breaks written by Memory
+	 *
+	 * @param content The content to split
+	 *
+	 * @return The lines of the content, without line breaks
+	 */
+	
+	static String[] split (String content) {
+		List<String> lines = new ArrayList<>();
+		int from = 0;
+		int to = content.indexOf('\n');
+		
+		while (to != -1) {
+			lines.add(strip(content, from, to));
+			from = to + 1;
+			to   = content.indexOf('\n', from);
+		}
+		
+		if (from < content.length())
+			lines.add(strip(content, from, content.length()));
+		
+		return lines.toArray(new String[0]);
+	}
+	
+	private static String strip (String content, int from, int to) {
+		return to > from && content.charAt(to - 1) == '\r' ? content.substring(from, to - 1)
+		                                                    : content.substring(from, to);
+	}
+	
+	/**
+	 * The cached lines of a single file
+	 */
+	
+	static final class Entry {
+		
+		private final String[] lines;
+		private final boolean newLine;
+		private final long size;
+		private final long modified;
+		
+		private Entry (String[] lines, boolean newLine, long size, long modified) {
+			this.lines    = lines;
+			this.newLine  = newLine;
+			this.size     = size;
+			this.modified = modified;
+		}
+		
+		/**
+		 * @return The lines of the file. The array is shared and must not be modified.
+		 */
+		
+		String[] lines () {
+			return lines;
+		}
+		
+		/**
+		 * @return True if the file ends with a line break
+		 */
+		
+		boolean endsWithNewLine () {
+			return newLine;
+		}
+		
+		/**
+		 * Joins a range of lines back into text, keeping the line breaks of the file
+		 *
+		 * @param from Index of the first line, starting from 0
+		 * @param to   Index right after the last line
+		 *
+		 * @return The text of the lines
+		 */
+		
+		String text (int from, int to) {
+			StringBuilder res = new StringBuilder();
+			
+			for (int i = Math.max(from, 0); i < Math.min(to, lines.length); i++) {
+				res.append(lines[i]);
+				
+				if (i < lines.length - 1 || newLine)
+					res.append('\n');
+			}
+			
+			return res.toString();
+		}
+	}
+}
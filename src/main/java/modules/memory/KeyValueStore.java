@@ -0,0 +1,520 @@
+package modules.memory;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Typed key-value store kept in an append-only log.
+ * Every put or remove is a single record appended to the end of the log, and an in-memory hash index maps each key
+ * to the offset of its latest value, so lookups are a single positional read and updates never rewrite the log.
+ * Compaction isn't periodic: the put or remove that leaves at least half of the log, and at least 64 KiB of it, made
+ * of overwritten or removed records rewrites the log into a fresh one holding only the live records. Records are
+ * checksummed, so a record torn by a crash is dropped when the log is opened.
+ *
+ * @param <V> Type of the values
+ */
+
+public final class KeyValueStore<V> implements Closeable {
+	
+	private static final Logger logger = LoggerFactory.getLogger(KeyValueStore.class);
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final int HEADER = Integer.BYTES + Byte.BYTES + Integer.BYTES + Integer.BYTES;
+	private static final long COMPACTION_THRESHOLD = 64 * 1024;
+	
+	private final Path file;
+	private final Codec<V> codec;
+	private final Map<String, Entry> index = new HashMap<>();
+	private final TreeSet<String> keys = new TreeSet<>();
+	private FileChannel channel;
+	private long length;
+	private long garbage;
+	
+	private KeyValueStore (Path file, Codec<V> codec) {
+		this.file  = file;
+		this.codec = codec;
+	}
+	
+	/**
+	 * Opens a store, creating its log if it doesn't exist yet
+	 *
+	 * @param path  Path of the log of the store
+	 * @param codec Converts the values to and from text
+	 * @param <V>   Type of the values
+	 *
+	 * @return The opened store
+	 *
+	 * @throws IOException if the log can't be read
+	 */
+	
+	@NotNull
+	public static <V> KeyValueStore<V> open (String path, Codec<V> codec) throws IOException {
+		KeyValueStore<V> store = new KeyValueStore<>(Paths.get(path).toAbsolutePath().normalize(), codec);
+		store.load();
+		return store;
+	}
+	
+	/**
+	 * Returns the value of a key
+	 *
+	 * @param key The key
+	 *
+	 * @return The value of the key, or null if the key isn't in the store
+	 */
+	
+	@Nullable
+	public synchronized V get (String key) {
+		Entry entry = index.get(key);
+		
+		if (entry == null)
+			return null;
+		
+		try {
+			return codec.decode(read(entry));
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * @param key The key
+	 *
+	 * @return True if the key is in the store
+	 */
+	
+	public synchronized boolean contains (String key) {
+		return index.containsKey(key);
+	}
+	
+	/**
+	 * Sets the value of a key
+	 *
+	 * @param key   The key
+	 * @param value The new value of the key
+	 *
+	 * @throws IllegalArgumentException if the value is null
+	 */
+	
+	public synchronized void put (String key, V value) {
+		putAll(Collections.singletonMap(key, value));
+	}
+	
+	/**
+	 * Sets the values of several keys with a single write to the log
+	 *
+	 * @param values The keys and their new values
+	 *
+	 * @throws IllegalArgumentException if a key or a value is null, in which case nothing is written
+	 */
+	
+	public synchronized void putAll (Map<String, ? extends V> values) {
+		if (values.isEmpty())
+			return;
+		
+		List<byte[]> records = new ArrayList<>(values.size());
+		
+		for (Map.Entry<String, ? extends V> value : values.entrySet()) {
+			if (value.getKey() == null || value.getValue() == null)
+				throw new IllegalArgumentException("Null key or value for " + value.getKey() + " in " + file);
+			
+			records.add(record(PUT, value.getKey(), codec.encode(value.getValue())));
+		}
+		
+		try {
+			long offset = write(records);
+			
+			for (byte[] record : records) {
+				index(record, offset);
+				offset += record.length;
+			}
+			
+			compactIfNeeded();
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Removes a key
+	 *
+	 * @param key The key
+	 *
+	 * @return True if the key was in the store
+	 */
+	
+	public synchronized boolean remove (String key) {
+		if (!index.containsKey(key))
+			return false;
+		
+		try {
+			byte[] record = record(REMOVE, key, "");
+			index(record, write(Collections.singletonList(record)));
+			compactIfNeeded();
+			return true;
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns every key that starts with a prefix, along with its value
+	 *
+	 * @param prefix The prefix of the keys, or an empty string for every key
+	 *
+	 * @return The matching keys and their values, sorted by key
+	 */
+	
+	@NotNull
+	public synchronized SortedMap<String, V> scan (String prefix) {
+		SortedMap<String, V> res = new TreeMap<>();
+		
+		for (String key : keys.tailSet(prefix)) {
+			if (!key.startsWith(prefix))
+				break;
+			
+			res.put(key, get(key));
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * @return The amount of keys in the store
+	 */
+	
+	public synchronized int size () {
+		return index.size();
+	}
+	
+	/**
+	 * Imports a text file holding one key and value per line, separated by the first occurrence of a separator.
+	 * Lines without the separator are skipped, and keys already in the store are overwritten.
+	 *
+	 * @param path      Path of the text file
+	 * @param separator Separates the key from the value in each line
+	 */
+	
+	public synchronized void importText (String path, String separator) {
+		Map<String, V> values = new LinkedHashMap<>();
+		
+		try (Stream<String> lines = Memory.lines(path)) {
+			lines.forEach(line -> {
+				int at = line.indexOf(separator);
+				
+				if (at >= 0)
+					values.put(line.substring(0, at), codec.decode(line.substring(at + separator.length())));
+			});
+		}
+		
+		putAll(values);
+	}
+	
+	/**
+	 * Exports the store to a text file holding one key and value per line, sorted by key. The file is replaced as a
+	 * whole, so readers see either its old content or the exported one.
+	 *
+	 * @param path      Path of the text file
+	 * @param separator Separates the key from the value in each line
+	 */
+	
+	public synchronized void exportText (String path, String separator) {
+		List<String> lines = new ArrayList<>(keys.size());
+		
+		for (String key : keys)
+			lines.add(key + separator + codec.encode(get(key)));
+		
+		Memory.overwriteFile(path, lines);
+	}
+	
+	/**
+	 * Rewrites the log with only the latest record of every key. The fresh log is opened before it replaces the old
+	 * one, and the old one is only closed once it has been replaced, so a failure at any step leaves the store on its
+	 * old log, still usable.
+	 */
+	
+	public synchronized void compact () {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Map<String, Entry> moved = new HashMap<>();
+		long offset = 0;
+		FileChannel fresh = null;
+		
+		try {
+			fresh = FileChannel.open(temp,
+			                         StandardOpenOption.CREATE,
+			                         StandardOpenOption.TRUNCATE_EXISTING,
+			                         StandardOpenOption.READ,
+			                         StandardOpenOption.WRITE);
+			
+			for (String key : keys) {
+				byte[] record = record(PUT, key, read(index.get(key)));
+				ByteBuffer buffer = ByteBuffer.wrap(record);
+				
+				while (buffer.hasRemaining())
+					fresh.write(buffer, offset + buffer.position());
+				
+				moved.put(key, entry(record, offset));
+				offset += record.length;
+			}
+			
+			fresh.force(true);
+			replace(temp);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			discard(fresh, temp);
+			return;
+		}
+		
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+		
+		channel = fresh;
+		length  = offset;
+		garbage = 0;
+		index.clear();
+		index.putAll(moved);
+	}
+	
+	/**
+	 * Drops the fresh log of a failed compaction, leaving the old log in place
+	 */
+	
+	private static void discard (FileChannel fresh, Path temp) {
+		try {
+			if (fresh != null)
+				fresh.close();
+			
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+	}
+	
+	private void replace (Path temp) throws IOException {
+		try {
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Closes the log of the store
+	 *
+	 * @throws IOException if the log can't be closed
+	 */
+	
+	@Override
+	public synchronized void close () throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Replays the log into the index. A torn or corrupt record ends the log, and is cut off so new records are
+	 * appended right after the last intact one.
+	 *
+	 * @throws IOException if the log can't be read
+	 */
+	
+	private void load () throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		
+		while (length + HEADER <= size) {
+			header.clear();
+			channel.read(header, length);
+			header.flip();
+			
+			int checksum = header.getInt();
+			byte op = header.get();
+			int keyLength = header.getInt();
+			int valueLength = header.getInt();
+			
+			if (keyLength < 0 || valueLength < 0 || length + HEADER + keyLength + valueLength > size)
+				break;
+			
+			byte[] record = new byte[HEADER + keyLength + valueLength];
+			channel.read(ByteBuffer.wrap(record), length);
+			
+			if ((op != PUT && op != REMOVE) || checksum != checksum(record))
+				break;
+			
+			index(record, length);
+			length += record.length;
+		}
+		
+		if (length < size) {
+			logger.error("Dropped {} bytes of a torn record at the end of {}", size - length, file);
+			channel.truncate(length);
+		}
+	}
+	
+	private long write (List<byte[]> records) throws IOException {
+		int size = 0;
+		
+		for (byte[] record : records)
+			size += record.length;
+		
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		
+		for (byte[] record : records)
+			buffer.put(record);
+		
+		buffer.flip();
+		long offset = length;
+		
+		while (buffer.hasRemaining())
+			channel.write(buffer, length + buffer.position());
+		
+		channel.force(false);
+		length += size;
+		return offset;
+	}
+	
+	private String read (Entry entry) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+		
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, entry.offset + buffer.position()) == -1)
+				throw new IOException("Unexpected end of " + file);
+		}
+		
+		return new String(buffer.array(), CHARSET);
+	}
+	
+	/**
+	 * Applies a record to the index
+	 *
+	 * @param record The record
+	 * @param offset Offset of the record in the log
+	 */
+	
+	private void index (byte[] record, long offset) {
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		byte op = buffer.get(Integer.BYTES);
+		int keyLength = buffer.getInt(Integer.BYTES + Byte.BYTES);
+		String key = new String(record, HEADER, keyLength, CHARSET);
+		Entry previous = op == PUT ? index.put(key, entry(record, offset)) : index.remove(key);
+		
+		if (previous != null)
+			garbage += previous.record;
+		
+		if (op == PUT) {
+			keys.add(key);
+		} else {
+			keys.remove(key);
+			garbage += record.length;
+		}
+	}
+	
+	private static Entry entry (byte[] record, long offset) {
+		int keyLength = ByteBuffer.wrap(record).getInt(Integer.BYTES + Byte.BYTES);
+		return new Entry(offset + HEADER + keyLength, record.length - HEADER - keyLength, record.length);
+	}
+	
+	private void compactIfNeeded () {
+		if (garbage >= COMPACTION_THRESHOLD && garbage * 2 >= length)
+			compact();
+	}
+	
+	/**
+	 * Encodes a record: its checksum, operation, key length, value length, key and value
+	 */
+	
+	private static byte[] record (byte op, String key, String value) {
+		byte[] keyBytes = key.getBytes(CHARSET);
+		byte[] valueBytes = value.getBytes(CHARSET);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER + keyBytes.length + valueBytes.length);
+		buffer.putInt(0).put(op).putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes);
+		buffer.putInt(0, checksum(buffer.array()));
+		return buffer.array();
+	}
+	
+	private static int checksum (byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record, Integer.BYTES, record.length - Integer.BYTES);
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * Location of the latest value of a key in the log
+	 */
+	
+	private static final class Entry {
+		
+		private final long offset;
+		private final int length;
+		private final int record;
+		
+		private Entry (long offset, int length, int record) {
+			this.offset = offset;
+			this.length = length;
+			this.record = record;
+		}
+	}
+	
+	/**
+	 * Converts values of a store to and from text
+	 *
+	 * @param <V> Type of the values
+	 */
+	
+	public interface Codec<V> {
+		
+		Codec<String> STRING = of(Function.identity(), Function.identity());
+		Codec<Long> LONG = of(String::valueOf, Long::valueOf);
+		Codec<Integer> INTEGER = of(String::valueOf, Integer::valueOf);
+		Codec<Boolean> BOOLEAN = of(String::valueOf, Boolean::valueOf);
+		
+		String encode (V value);
+		
+		V decode (String text);
+		
+		/**
+		 * @param encode Converts a value to text
+		 * @param decode Converts text back to a value
+		 * @param <V>    Type of the values
+		 *
+		 * @return A codec made of the two conversions
+		 */
+		
+		static <V> Codec<V> of (Function<? super V, String> encode, Function<String, ? extends V> decode) {
+			return new Codec<V>() {
+				@Override
+				public String encode (V value) {
+					return encode.apply(value);
+				}
+				
+				@Override
+				public V decode (String text) {
+					return decode.apply(text);
+				}
+			};
+		}
+	}
+}
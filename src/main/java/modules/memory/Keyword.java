@@ -0,0 +1,165 @@
+package modules.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A keyword prepared once for a search, so lines can be matched directly on their encoded bytes.
+ * When case is ignored, the keyword and the lines are folded with {@link #fold(String)}, whether the lines are cached
+ * or read from disk. ASCII keywords are compared with ASCII folding of ASCII lines, which folds them the same way.
+ * Other keywords, and lines with other characters, which may fold into ASCII ones, are decoded and folded instead.
+ */
+
+final class Keyword {
+	
+	private final String keyword;
+	private final String folded;
+	private final byte[] bytes;
+	private final boolean ignoreCase;
+	private final boolean wholeLine;
+	private final boolean bytewise;
+	private final Charset charset;
+	
+	/**
+	 * @param keyword    The keyword to search
+	 * @param ignoreCase Should the search ignore case or not
+	 * @param wholeLine  Must the keyword be the whole line, or a part of it
+	 * @param charset    The charset of the searched file
+	 */
+	
+	Keyword (String keyword, boolean ignoreCase, boolean wholeLine, Charset charset) {
+		this.keyword    = keyword;
+		this.folded     = fold(keyword);
+		this.ignoreCase = ignoreCase;
+		this.wholeLine  = wholeLine;
+		this.charset    = charset;
+		this.bytewise   = !ignoreCase || isAscii(keyword);
+		this.bytes      = (ignoreCase && bytewise ? folded : keyword).getBytes(charset);
+	}
+	
+	/**
+	 * @return The keyword as it was given
+	 */
+	
+	String keyword () {
+		return keyword;
+	}
+	
+	/**
+	 * @return True if the keyword must be the whole line
+	 */
+	
+	boolean isWholeLine () {
+		return wholeLine;
+	}
+	
+	/**
+	 * Matches a decoded line
+	 *
+	 * @param line The line
+	 *
+	 * @return True if the line matches the keyword
+	 */
+	
+	boolean test (String line) {
+		if (!ignoreCase)
+			return wholeLine ? line.equals(keyword) : line.contains(keyword);
+		
+		String text = fold(line);
+		return wholeLine ? text.equals(folded) : text.contains(folded);
+	}
+	
+	/**
+	 * Matches a line on its encoded bytes, without decoding it when possible
+	 *
+	 * @param buffer The buffer holding the line
+	 * @param from   Offset of the first byte of the line in the buffer
+	 * @param to     Offset right after the last byte of the line, excluding its line break
+	 *
+	 * @return True if the line matches the keyword
+	 */
+	
+	boolean matches (ByteBuffer buffer, int from, int to) {
+		int end = to > from && buffer.get(to - 1) == '\r' ? to - 1 : to;
+		
+		if (!bytewise || ignoreCase && !isAscii(buffer, from, end))
+			return test(decode(buffer, from, end));
+		
+		if (wholeLine)
+			return end - from == bytes.length && matchesAt(buffer, from);
+		
+		for (int i = from; i <= end - bytes.length; i++) {
+			if (matchesAt(buffer, i))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Folds the case of a text, the same way for every search that ignores case. Each character is folded on its own
+	 * as {@link String#equalsIgnoreCase(String)} does, so a part of a text folds to a part of the folded text.
+	 *
+	 * @param text The text
+	 *
+	 * @return The folded text
+	 */
+	
+	static String fold (String text) {
+		char[] chars = text.toCharArray();
+		
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		
+		return new String(chars);
+	}
+	
+	/**
+	 * @param buffer The buffer holding the bytes
+	 * @param from   Offset of the first byte
+	 * @param to     Offset right after the last byte
+	 *
+	 * @return True if every byte is an ASCII character
+	 */
+	
+	static boolean isAscii (ByteBuffer buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) < 0)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private boolean matchesAt (ByteBuffer buffer, int at) {
+		for (int i = 0; i < bytes.length; i++) {
+			byte b = buffer.get(at + i);
+			
+			if (ignoreCase && b >= 'A' && b <= 'Z')
+				b += 'a' - 'A';
+			
+			if (b != bytes[i])
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private String decode (ByteBuffer buffer, int from, int to) {
+		byte[] line = new byte[to - from];
+		
+		for (int i = 0; i < line.length; i++)
+			line[i] = buffer.get(from + i);
+		
+		return new String(line, charset);
+	}
+	
+	private static boolean isAscii (String keyword) {
+		for (int i = 0; i < keyword.length(); i++) {
+			if (keyword.charAt(i) > 127)
+				return false;
+		}
+		
+		return true;
+	}
+}
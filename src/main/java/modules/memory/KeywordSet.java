@@ -0,0 +1,346 @@
+package modules.memory;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A set of keywords compiled once into an Aho-Corasick automaton, so a file can be searched for all of them in a single
+ * pass, whatever the amount of keywords. The automaton runs on the encoded bytes of each line and has no mutable
+ * state, so a compiled set can be reused by any amount of searches at once.
+ * Keywords match as a part of a line. When case is ignored, keywords are folded in advance and lines are folded as
+ * they are read with {@link Keyword#fold(String)}: byte by byte if every keyword and the line are ASCII, by decoding
+ * the line otherwise.
+ */
+
+public final class KeywordSet {
+	
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	
+	private final String[] keywords;
+	private final boolean ignoreCase;
+	private final boolean bytewise;
+	private final int[] classes = new int[256];
+	private final int width;
+	private final int[] transitions;
+	private final int[][] outputs;
+	
+	private KeywordSet (String[] keywords, boolean ignoreCase) {
+		this.keywords   = keywords;
+		this.ignoreCase = ignoreCase;
+		
+		byte[][] patterns = new byte[keywords.length][];
+		boolean ascii = true;
+		
+		for (int i = 0; i < keywords.length; i++) {
+			ascii &= isAscii(keywords[i]);
+			patterns[i] = (ignoreCase ? Keyword.fold(keywords[i]) : keywords[i]).getBytes(CHARSET);
+		}
+		
+		this.bytewise = !ignoreCase || ascii;
+		
+		int width = 1;
+		
+		for (byte[] pattern : patterns) {
+			for (byte b : pattern) {
+				if (classes[b & 0xff] == 0)
+					classes[b & 0xff] = width++;
+			}
+		}
+		
+		this.width = width;
+		
+		List<int[]> trie = new ArrayList<>();
+		List<List<Integer>> own = new ArrayList<>();
+		trie.add(new int[width]);
+		own.add(new ArrayList<>());
+		
+		for (int i = 0; i < patterns.length; i++) {
+			int state = 0;
+			
+			for (byte b : patterns[i]) {
+				int c = classes[b & 0xff];
+				
+				if (trie.get(state)[c] == 0) {
+					trie.get(state)[c] = trie.size();
+					trie.add(new int[width]);
+					own.add(new ArrayList<>());
+				}
+				
+				state = trie.get(state)[c];
+			}
+			
+			own.get(state).add(i);
+		}
+		
+		int states = trie.size();
+		int[] fail = new int[states];
+		this.transitions = new int[states * width];
+		this.outputs     = new int[states][];
+		outputs[0] = toArray(own.get(0));
+		
+		Deque<Integer> queue = new ArrayDeque<>();
+		
+		for (int c = 1; c < width; c++) {
+			int next = trie.get(0)[c];
+			transitions[c] = next;
+			
+			if (next != 0)
+				queue.add(next);
+		}
+		
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			int[] output = merge(toArray(own.get(state)), outputs[fail[state]]);
+			outputs[state] = output;
+			
+			for (int c = 1; c < width; c++) {
+				int next = trie.get(state)[c];
+				
+				if (next == 0) {
+					transitions[state * width + c] = transitions[fail[state] * width + c];
+				} else {
+					fail[next]                     = transitions[fail[state] * width + c];
+					transitions[state * width + c] = next;
+					queue.add(next);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compiles a set of keywords
+	 *
+	 * @param keywords   The keywords to search, duplicates are searched once
+	 * @param ignoreCase Should the search ignore case or not
+	 *
+	 * @return The compiled keywords
+	 */
+	
+	@NotNull
+	public static KeywordSet compile (Collection<String> keywords, boolean ignoreCase) {
+		return new KeywordSet(new LinkedHashSet<>(keywords).toArray(new String[0]), ignoreCase);
+	}
+	
+	/**
+	 * @return The keywords of the set, in the order they were given
+	 */
+	
+	@NotNull
+	public List<String> keywords () {
+		return Collections.unmodifiableList(Arrays.asList(keywords));
+	}
+	
+	/**
+	 * @return True if the set ignores case
+	 */
+	
+	public boolean isIgnoreCase () {
+		return ignoreCase;
+	}
+	
+	/**
+	 * Starts collecting the lines matched by the keywords
+	 *
+	 * @param limit The amount of matching lines after which the search can stop
+	 *
+	 * @return An empty collection of matches
+	 */
+	
+	Matches matches (int limit) {
+		return new Matches(keywords.length, limit);
+	}
+	
+	/**
+	 * Matches a line on its encoded bytes
+	 *
+	 * @param buffer  The buffer holding the line
+	 * @param from    Offset of the first byte of the line in the buffer
+	 * @param to      Offset right after the last byte of the line, excluding its line break
+	 * @param line    Number of the line
+	 * @param matches Collects the matches
+	 */
+	
+	void match (ByteBuffer buffer, int from, int to, long line, Matches matches) {
+		int end = to > from && buffer.get(to - 1) == '\r' ? to - 1 : to;
+		
+		if (!bytewise || ignoreCase && !Keyword.isAscii(buffer, from, end)) {
+			byte[] bytes = new byte[end - from];
+			
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = buffer.get(from + i);
+			
+			match(new String(bytes, CHARSET), line, matches);
+			return;
+		}
+		
+		int state = 0;
+		matches.add(outputs[0], line);
+		
+		for (int i = from; i < end; i++) {
+			byte b = buffer.get(i);
+			
+			if (ignoreCase && b >= 'A' && b <= 'Z')
+				b += 'a' - 'A';
+			
+			state = transitions[state * width + classes[b & 0xff]];
+			matches.add(outputs[state], line);
+		}
+	}
+	
+	/**
+	 * Matches a decoded line
+	 *
+	 * @param text    The line
+	 * @param line    Number of the line
+	 * @param matches Collects the matches
+	 */
+	
+	void match (String text, long line, Matches matches) {
+		byte[] bytes = (ignoreCase ? Keyword.fold(text) : text).getBytes(CHARSET);
+		int state = 0;
+		matches.add(outputs[0], line);
+		
+		for (byte b : bytes) {
+			state = transitions[state * width + classes[b & 0xff]];
+			matches.add(outputs[state], line);
+		}
+	}
+	
+	private static int[] merge (int[] own, int[] inherited) {
+		if (inherited.length == 0)
+			return own;
+		if (own.length == 0)
+			return inherited;
+		
+		int[] res = Arrays.copyOf(own, own.length + inherited.length);
+		System.arraycopy(inherited, 0, res, own.length, inherited.length);
+		return res;
+	}
+	
+	private static int[] toArray (List<Integer> list) {
+		int[] res = new int[list.size()];
+		
+		for (int i = 0; i < res.length; i++)
+			res[i] = list.get(i);
+		
+		return res;
+	}
+	
+	private static boolean isAscii (String keyword) {
+		for (int i = 0; i < keyword.length(); i++) {
+			if (keyword.charAt(i) > 127)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Lines matched by each keyword of a single search
+	 */
+	
+	final class Matches {
+		
+		private final long[][] lines;
+		private final int[] sizes;
+		private final int limit;
+		private long lastLine = -1;
+		private long matchedLines;
+		
+		private Matches (int keywords, int limit) {
+			this.lines = new long[keywords][];
+			this.sizes = new int[keywords];
+			this.limit = limit;
+		}
+		
+		private void add (int[] matched, long line) {
+			for (int keyword : matched) {
+				int size = sizes[keyword];
+				
+				if (size > 0 && lines[keyword][size - 1] == line)
+					continue;
+				
+				if (lines[keyword] == null)
+					lines[keyword] = new long[4];
+				else if (size == lines[keyword].length)
+					lines[keyword] = Arrays.copyOf(lines[keyword], size * 2);
+				
+				lines[keyword][sizes[keyword]++] = line;
+				
+				if (line != lastLine) {
+					lastLine = line;
+					matchedLines++;
+				}
+			}
+		}
+		
+		/**
+		 * Adds the matches of the lines that follow the lines matched so far
+		 *
+		 * @param next   Matches of the following lines, numbered from 1
+		 * @param offset The amount of lines before the following lines
+		 */
+		
+		void append (Matches next, long offset) {
+			for (int keyword = 0; keyword < lines.length; keyword++) {
+				int size = sizes[keyword] + next.sizes[keyword];
+				
+				if (next.sizes[keyword] == 0)
+					continue;
+				
+				if (lines[keyword] == null)
+					lines[keyword] = new long[size];
+				else if (size > lines[keyword].length)
+					lines[keyword] = Arrays.copyOf(lines[keyword], Math.max(size, lines[keyword].length * 2));
+				
+				for (int i = 0; i < next.sizes[keyword]; i++)
+					lines[keyword][sizes[keyword]++] = next.lines[keyword][i] + offset;
+			}
+			
+			matchedLines += next.matchedLines;
+			
+			if (next.lastLine != -1)
+				lastLine = next.lastLine + offset;
+		}
+		
+		/**
+		 * @return True if enough lines matched for the search to stop
+		 */
+		
+		boolean isDone () {
+			return matchedLines >= limit;
+		}
+		
+		/**
+		 * @return The first matching line, or -1 if no line matched
+		 */
+		
+		long first () {
+			long res = -1;
+			
+			for (int i = 0; i < lines.length; i++) {
+				if (sizes[i] > 0 && (res == -1 || lines[i][0] < res))
+					res = lines[i][0];
+			}
+			
+			return res;
+		}
+		
+		/**
+		 * @return The matching lines of every keyword, in ascending order, by keyword
+		 */
+		
+		Map<String, long[]> byKeyword () {
+			Map<String, long[]> res = new LinkedHashMap<>();
+			
+			for (int i = 0; i < keywords.length; i++)
+				res.put(keywords[i], sizes[i] == 0 ? new long[0] : Arrays.copyOf(lines[i], sizes[i]));
+			
+			return res;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package modules.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes lines scanned on their raw bytes into a single reusable character buffer, so lines that need to be matched
+ * as text, such as by a regular expression, don't create a String each. The decoded text is only valid until the
+ * next line is decoded, and a decoder must not be shared between threads.
+ */
+
+final class LineDecoder {
+	
+	private static final int BUFFER_SIZE = 256;
+	
+	private final CharsetDecoder decoder;
+	private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer source;
+	private ByteBuffer view;
+	
+	LineDecoder (Charset charset) {
+		this.decoder = charset.newDecoder()
+		                      .onMalformedInput(CodingErrorAction.REPLACE)
+		                      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+	
+	/**
+	 * Decodes a line, without its trailing carriage return
+	 *
+	 * @param buffer The buffer holding the line
+	 * @param from   Offset of the first byte of the line in the buffer
+	 * @param to     Offset right after the last byte of the line, excluding its line break
+	 *
+	 * @return The decoded line, valid until the next call
+	 */
+	
+	CharSequence decode (ByteBuffer buffer, int from, int to) {
+		int end = to > from && buffer.get(to - 1) == '\r' ? to - 1 : to;
+		
+		if (buffer != source) {
+			source = buffer;
+			view   = buffer.duplicate();
+		}
+		
+		int length = (int) Math.ceil((end - from) * (double) decoder.maxCharsPerByte());
+		
+		if (chars.capacity() < length)
+			chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+		
+		view.limit(end).position(from);
+		chars.clear();
+		decoder.reset();
+		decoder.decode(view, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+}
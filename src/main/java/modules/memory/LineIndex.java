@@ -0,0 +1,174 @@
+package modules.memory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Byte offsets of the start of every line in a file.
+ * Built in a single pass over the file and extended when bytes are appended, so reading a line or a range of lines
+ * is a seek plus a bounded read instead of a scan from the start of the file.
+ */
+
+final class LineIndex {
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private long[] starts = new long[16];
+	private int lines;
+	private long length;
+	private boolean newLine = true;
+	private long modified = -1;
+	private long size = -1;
+	
+	/**
+	 * Builds the index of a file on disk
+	 *
+	 * @param path Path of the file to index
+	 *
+	 * @return The index of the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static LineIndex build (Path path) throws IOException {
+		LineIndex index = new LineIndex();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		
+		try (InputStream is = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+			byte[] c = new byte[BUFFER_SIZE];
+			int readChars = is.read(c);
+			
+			while (readChars != -1) {
+				index.append(c, readChars);
+				readChars = is.read(c);
+			}
+		}
+		
+		return index.stamp(attributes);
+	}
+	
+	/**
+	 * Builds the index of content that is about to be written to a file
+	 *
+	 * @param content The content of the file
+	 *
+	 * @return The index of the content
+	 */
+	
+	static LineIndex of (byte[] content) {
+		LineIndex index = new LineIndex();
+		index.append(content, content.length);
+		return index;
+	}
+	
+	/**
+	 * Extends the index with bytes appended to the end of the file
+	 *
+	 * @param bytes The appended bytes
+	 * @param count The amount of bytes to take from the array
+	 */
+	
+	void append (byte[] bytes, int count) {
+		for (int i = 0; i < count; i++) {
+			if (newLine) {
+				if (lines == starts.length)
+					starts = Arrays.copyOf(starts, lines * 2);
+				
+				starts[lines++] = length + i;
+				newLine         = false;
+			}
+			
+			if (bytes[i] == '\n')
+				newLine = true;
+		}
+		
+		length += count;
+	}
+	
+	/**
+	 * Records the modification time and size of the file, so changes made outside of Memory can be detected
+	 *
+	 * @param attributes Attributes of the indexed file
+	 *
+	 * @return This index
+	 */
+	
+	LineIndex stamp (BasicFileAttributes attributes) {
+		modified = attributes.lastModifiedTime().toMillis();
+		size     = attributes.size();
+		return this;
+	}
+	
+	/**
+	 * Checks that the file hasn't changed since it was indexed
+	 *
+	 * @param path Path of the indexed file
+	 *
+	 * @return True if the index still describes the file
+	 */
+	
+	boolean isCurrent (Path path) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.size() == size && size == length &&
+			       attributes.lastModifiedTime().toMillis() == modified;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * @return The amount of lines in the file
+	 */
+	
+	int lines () {
+		return lines;
+	}
+	
+	/**
+	 * @return The length of the file in bytes
+	 */
+	
+	long length () {
+		return length;
+	}
+	
+	/**
+	 * @return True if the file is empty or its last line is terminated by a line break
+	 */
+	
+	boolean endsWithNewLine () {
+		return length == 0 || newLine;
+	}
+	
+	/**
+	 * Returns the offset of the first byte of a line
+	 *
+	 * @param line Index of the line, starting from 0. Lines past the end of the file start at the end of the file
+	 *
+	 * @return The offset of the first byte of the line
+	 */
+	
+	long start (int line) {
+		return line < lines ? starts[Math.max(line, 0)] : length;
+	}
+	
+	/**
+	 * Returns the offset right after the last byte of a line, excluding its line break
+	 *
+	 * @param line Index of the line, starting from 0
+	 *
+	 * @return The offset right after the last byte of the line
+	 */
+	
+	long end (int line) {
+		if (line + 1 < lines)
+			return starts[line + 1] - 1;
+		return newLine && length > 0 ? length - 1 : length;
+	}
+}
@@ -0,0 +1,191 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Walks the lines of a file on their raw bytes, either through a reusable read buffer or through memory mapped
+ * windows of the file. Lines are handed to a visitor as offsets into the buffer, so no String is created unless the
+ * visitor asks for one.
+ */
+
+final class LineScanner {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	private LineScanner () {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Receives the lines of a scanned file
+	 */
+	
+	interface Visitor {
+		
+		/**
+		 * @param buffer The buffer holding the line
+		 * @param from   Offset of the first byte of the line in the buffer
+		 * @param to     Offset right after the last byte of the line, excluding its line break
+		 * @param line   Number of the line, starting from 1
+		 *
+		 * @return True to continue to the next line, false to stop the scan
+		 */
+		
+		boolean visit (ByteBuffer buffer, int from, int to, long line);
+	}
+	
+	/**
+	 * Visits the lines of a file in order
+	 *
+	 * @param file    Path of the file
+	 * @param mapped  Should the file be memory mapped, or read through a buffer
+	 * @param visitor Receives the lines
+	 *
+	 * @return The amount of bytes read from the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static long scan (Path file, boolean mapped, Visitor visitor) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return scan(channel, 0, channel.size(), mapped, visitor);
+		}
+	}
+	
+	/**
+	 * Visits the lines of a range of a file in order. The channel is only read at absolute positions, so several
+	 * ranges of the same channel can be scanned at once.
+	 *
+	 * @param channel Channel of the file
+	 * @param start   Offset of the first byte of the range, at the start of a line
+	 * @param end     Offset right after the last byte of the range, right after a line break or at the end of the file
+	 * @param mapped  Should the range be memory mapped, or read through a buffer
+	 * @param visitor Receives the lines, numbered from 1 at the start of the range
+	 *
+	 * @return The amount of bytes read from the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static long scan (FileChannel channel, long start, long end, boolean mapped, Visitor visitor) throws IOException {
+		return mapped ? scanMapped(channel, start, end, visitor) : scanBuffered(channel, start, end, visitor);
+	}
+	
+	/**
+	 * Counts the line breaks of a file on a memory mapping of the file
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The amount of line breaks in the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static long countMapped (Path file) throws IOException {
+		long count = 0;
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			for (long position = 0; position < size; position += WINDOW_SIZE) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+				                                      position,
+				                                      Math.min(WINDOW_SIZE, size - position));
+				
+				for (int i = 0; i < buffer.limit(); i++) {
+					if (buffer.get(i) == '\n')
+						++count;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	private static long scanMapped (FileChannel channel, long start, long end, Visitor visitor) throws IOException {
+		long position = start;
+		long line = 1;
+		int window = WINDOW_SIZE;
+		
+		while (position < end) {
+			int length = (int) Math.min(window, end - position);
+			boolean last = position + length == end;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int from = 0;
+			
+			for (int i = 0; i < length; i++) {
+				if (buffer.get(i) == '\n') {
+					if (!visitor.visit(buffer, from, i, line++))
+						return position + i + 1 - start;
+					
+					from = i + 1;
+				}
+			}
+			
+			if (last) {
+				if (from < length)
+					visitor.visit(buffer, from, length, line);
+				return end - start;
+			}
+			
+			if (from == 0)
+				window = (int) Math.min(Integer.MAX_VALUE, window * 2L);
+			
+			position += from;
+		}
+		
+		return end - start;
+	}
+	
+	private static long scanBuffered (FileChannel channel, long start, long end, Visitor visitor) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long position = start;
+		long line = 1;
+		int scanned = 0;
+		
+		while (true) {
+			buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + (end - position)));
+			int read = channel.read(buffer, position);
+			
+			if (read > 0)
+				position += read;
+			
+			boolean last = read == -1 || position >= end;
+			int limit = buffer.position();
+			int from = 0;
+			
+			for (int i = scanned; i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					if (!visitor.visit(buffer, from, i, line++))
+						return position - start;
+					
+					from = i + 1;
+				}
+			}
+			
+			if (last) {
+				if (from < limit)
+					visitor.visit(buffer, from, limit, line);
+				return position - start;
+			}
+			
+			if (from == 0 && limit == buffer.capacity()) {
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			} else {
+				buffer.limit(limit).position(from);
+				buffer.compact();
+			}
+			
+			scanned = buffer.position();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazily decodes the lines of a byte range of a file through a reusable read buffer.
+ * Reads are positional, so splits of the same range share the channel and are read in parallel, each through a buffer
+ * of its own. Ranges are split at line breaks, so every line is decoded by exactly one split.
+ */
+
+final class LineSpliterator implements Spliterator<String> {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int SPLIT_SIZE = 4 * BUFFER_SIZE;
+	
+	private final Path file;
+	private final FileChannel channel;
+	private final Charset charset;
+	private final long end;
+	private long position;
+	private ByteBuffer buffer;
+	
+	/**
+	 * @param file    Path of the file
+	 * @param channel The channel of the file
+	 * @param charset The charset of the file
+	 * @param from    Offset of the first byte of the first line
+	 * @param to      Offset right after the last byte of the range
+	 */
+	
+	LineSpliterator (Path file, FileChannel channel, Charset charset, long from, long to) {
+		this.file     = file;
+		this.channel  = channel;
+		this.charset  = charset;
+		this.position = from;
+		this.end      = to;
+	}
+	
+	@Override
+	public boolean tryAdvance (Consumer<? super String> action) {
+		try {
+			String line = next();
+			
+			if (line == null)
+				return false;
+			
+			action.accept(line);
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public Spliterator<String> trySplit () {
+		if (buffer != null || end - position < SPLIT_SIZE)
+			return null;
+		
+		try {
+			long middle = lineStart(position + (end - position) / 2);
+			
+			if (middle <= position || middle >= end)
+				return null;
+			
+			LineSpliterator prefix = new LineSpliterator(file, channel, charset, position, middle);
+			position = middle;
+			return prefix;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public long estimateSize () {
+		return end - position;
+	}
+	
+	@Override
+	public int characteristics () {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+	
+	/**
+	 * Decodes the next line of the range
+	 *
+	 * @return The line without its line break, or null if the range is over
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private String next () throws IOException {
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(end - position, 1)));
+			buffer.limit(0);
+		}
+		
+		int scanned = buffer.position();
+		
+		while (true) {
+			for (int i = scanned; i < buffer.limit(); i++) {
+				if (buffer.get(i) == '\n') {
+					String line = decode(buffer.position(), i);
+					buffer.position(i + 1);
+					return line;
+				}
+			}
+			
+			if (position >= end) {
+				if (!buffer.hasRemaining())
+					return null;
+				
+				String line = decode(buffer.position(), buffer.limit());
+				buffer.position(buffer.limit());
+				return line;
+			}
+			
+			scanned = fill();
+		}
+	}
+	
+	/**
+	 * Reads more of the range into the buffer, keeping the bytes of the current line
+	 *
+	 * @return Offset in the buffer of the first byte that wasn't scanned yet
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private int fill () throws IOException {
+		int kept = buffer.remaining();
+		
+		if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			larger.put(buffer);
+			buffer = larger;
+		} else {
+			buffer.compact();
+		}
+		
+		buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + end - position));
+		int read = channel.read(buffer, position);
+		
+		if (read == -1) {
+			position = end;
+		} else {
+			position += read;
+			MemoryMetrics.read(file, read);
+		}
+		
+		buffer.flip();
+		return kept;
+	}
+	
+	/**
+	 * Finds the start of the first line that starts at or after an offset
+	 *
+	 * @param offset Offset in the file
+	 *
+	 * @return Offset of the first byte after the first line break at or after the offset, or the end of the range
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private long lineStart (long offset) throws IOException {
+		ByteBuffer probe = ByteBuffer.allocate(8192);
+		
+		while (offset < end) {
+			probe.clear().limit((int) Math.min(probe.capacity(), end - offset));
+			int read = channel.read(probe, offset);
+			
+			if (read <= 0)
+				break;
+			
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n')
+					return offset + i + 1;
+			}
+			
+			offset += read;
+		}
+		
+		return end;
+	}
+	
+	private String decode (int from, int to) {
+		if (to > from && buffer.get(to - 1) == '\r')
+			to--;
+		return new String(buffer.array(), buffer.arrayOffset() + from, to - from, charset);
+	}
+}
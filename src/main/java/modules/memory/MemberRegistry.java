@@ -0,0 +1,185 @@
+package modules.memory;
+
+import modules.util.LongMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Records of members kept in memory by their Discord ID, and persisted to a text file through Memory.
+ * Lookups go through a primitive {@link LongMap}, so they take constant time and don't allocate. Every change is
+ * appended to the file as a single line: the ID, the separator and the encoded record for a put, or the ID alone for a
+ * removal. Loading replays the lines in order, and once most of the lines are outdated the file is rewritten with a
+ * line per member, so the file must belong to the registry alone: lines written to it by anything else are skipped
+ * when loading and lost by the rewrite.
+ * Changes are written through {@link AsyncMemory}, so the methods of the registry never wait on disk and can be called
+ * from event listeners. The writes reach the file in the order the changes were made, and a failed write is logged.
+ *
+ * @param <V> Type of the records
+ */
+
+public final class MemberRegistry<V> {
+	
+	private static final int COMPACTION_THRESHOLD = 1024;
+	private static final Logger logger = LoggerFactory.getLogger(MemberRegistry.class);
+	
+	private final String path;
+	private final String separator;
+	private final KeyValueStore.Codec<V> codec;
+	private final LongMap<V> records = new LongMap<>();
+	private int lines;
+	
+	private MemberRegistry (String path, String separator, KeyValueStore.Codec<V> codec) {
+		this.path      = path;
+		this.separator = separator;
+		this.codec     = codec;
+	}
+	
+	/**
+	 * Loads a registry from its file. A missing file is an empty registry, and is created on the first change.
+	 *
+	 * @param path      Path of the file of the registry, which nothing else writes to
+	 * @param separator Separates the ID from the record in each line
+	 * @param codec     Converts the records to and from text
+	 * @param <V>       Type of the records
+	 *
+	 * @return The loaded registry
+	 */
+	
+	@NotNull
+	public static <V> MemberRegistry<V> load (String path, String separator, KeyValueStore.Codec<V> codec) {
+		MemberRegistry<V> registry = new MemberRegistry<>(path, separator, codec);
+		
+		if (!Files.exists(Paths.get(path)))
+			return registry;
+		
+		try (Stream<String> lines = Memory.lines(path)) {
+			lines.forEach(registry::replay);
+		}
+		
+		return registry;
+	}
+	
+	/**
+	 * Returns the record of a member
+	 *
+	 * @param id The Discord ID of the member
+	 *
+	 * @return The record of the member, or null if the member isn't registered
+	 */
+	
+	@Nullable
+	public synchronized V get (long id) {
+		return records.get(id);
+	}
+	
+	/**
+	 * @param id The Discord ID of the member
+	 *
+	 * @return True if the member is registered
+	 */
+	
+	public synchronized boolean contains (long id) {
+		return records.containsKey(id);
+	}
+	
+	/**
+	 * Sets the record of a member and queues its line to be appended to the file
+	 *
+	 * @param id     The Discord ID of the member
+	 * @param record The new record of the member
+	 *
+	 * @return The previous record of the member, or null if the member wasn't registered
+	 */
+	
+	@Nullable
+	public synchronized V put (long id, V record) {
+		V previous = records.put(id, record);
+		append(id + separator + codec.encode(record));
+		return previous;
+	}
+	
+	/**
+	 * Removes the record of a member and queues the removal to be appended to the file
+	 *
+	 * @param id The Discord ID of the member
+	 *
+	 * @return The removed record, or null if the member wasn't registered
+	 */
+	
+	@Nullable
+	public synchronized V remove (long id) {
+		if (!records.containsKey(id))
+			return null;
+		
+		V previous = records.remove(id);
+		append(String.valueOf(id));
+		return previous;
+	}
+	
+	/**
+	 * @return The amount of registered members
+	 */
+	
+	public synchronized int size () {
+		return records.size();
+	}
+	
+	/**
+	 * @return The Discord IDs of the registered members, in no particular order
+	 */
+	
+	@NotNull
+	public synchronized long[] ids () {
+		return records.keys();
+	}
+	
+	/**
+	 * Queues a rewrite of the file with a single line per registered member
+	 */
+	
+	public synchronized void compact () {
+		List<String> live = new ArrayList<>(records.size());
+		records.forEach((id, record) -> live.add(id + separator + codec.encode(record)));
+		logFailure(AsyncMemory.overwriteFile(path, live));
+		lines = live.size();
+	}
+	
+	private void replay (String line) {
+		int at = line.indexOf(separator);
+		
+		try {
+			if (at < 0)
+				records.remove(Long.parseLong(line.trim()));
+			else
+				records.put(Long.parseLong(line.substring(0, at).trim()),
+				            codec.decode(line.substring(at + separator.length())));
+			
+			lines++;
+		} catch (NumberFormatException e) {
+			// Lines that don't start with an ID aren't records
+		}
+	}
+	
+	private void append (String line) {
+		logFailure(AsyncMemory.writeFile(path, line));
+		
+		if (++lines >= COMPACTION_THRESHOLD && lines > records.size() * 2)
+			compact();
+	}
+	
+	private void logFailure (CompletableFuture<Void> write) {
+		write.whenComplete((ignored, e) -> {
+			if (e != null)
+				logger.error("Couldn't write the registry " + path + ": " + e.getMessage());
+		});
+	}
+}
@@ -5,6 +5,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Memory Module of the bot.
@@ -17,6 +48,21 @@ public class Memory {
 	
 	private static final Logger logger = LoggerFactory.getLogger(Memory.class);
 	private static final String VALUE_WASNT_FOUND = "Value {} wasn't found";
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	private static final Map<Path, LineIndex> INDEXES = new ConcurrentHashMap<>();
+	private static final FileCache CACHE = new FileCache(CHARSET);
+	private static final WriteQueue QUEUE = new WriteQueue(Memory::commit);
+	private static final Map<Path, SearchIndex> SEARCH_INDEXES = new ConcurrentHashMap<>();
+	private static final PathLocks LOCKS = new PathLocks();
+	private static final PatternCache PATTERNS = new PatternCache();
+	private static final Map<Path, Tombstones> TOMBSTONES = new ConcurrentHashMap<>();
+	private static volatile long mappedThreshold = Long.MAX_VALUE;
+	private static volatile long parallelThreshold = ParallelScanner.DEFAULT_THRESHOLD;
+	private static volatile double compactionRatio = Tombstones.DEFAULT_RATIO;
+	
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(Memory::saveSearchIndexes, "memory-index"));
+	}
 	
 	private Memory () {
 		throw new UnsupportedOperationException();
@@ -32,32 +78,7 @@ public class Memory {
 	
 	@NotNull
 	public static String readFile (String path) {
-		StringBuilder raw;
-		String line;
-		String text = null;
-		int count = 0;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			raw  = new StringBuilder();
-			line = reader.readLine();
-			
-			while (line != null) {
-				raw.append(line);
-				
-				if (count < countLines(path))
-					raw.append("\n");
-				
-				line = reader.readLine();
-				count++;
-			}
-			
-			text = raw.toString();
-			
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-		}
-		
-		return text != null ? text : "";
+		return slice(path, 0, Long.MAX_VALUE);
 	}
 	
 	/**
@@ -71,32 +92,7 @@ public class Memory {
 	
 	@NotNull
 	public static String readFile (String path, long end) {
-		StringBuilder raw;
-		String line;
-		String text = null;
-		int count = 0;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			raw  = new StringBuilder();
-			line = reader.readLine();
-			
-			while (line != null && count < end) {
-				raw.append(line);
-				
-				if (count < countLines(path))
-					raw.append("\n");
-				
-				line = reader.readLine();
-				count++;
-			}
-			
-			text = raw.toString();
-			
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-		}
-		
-		return text != null ? text : "";
+		return slice(path, 0, end);
 	}
 	
 	/**
@@ -110,88 +106,172 @@ public class Memory {
 	
 	@NotNull
 	public static String readFile (long start, String path) {
-		StringBuilder raw;
-		String line;
-		String text = null;
-		int count = 0;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			raw  = new StringBuilder();
-			line = reader.readLine();
-			
-			while (line != null && count < start - 1) {
-				line = reader.readLine();
-				count++;
-			}
-			
-			while (line != null) {
-				raw.append(line);
-				
-				if (count < countLines(path))
-					raw.append("\n");
-				
-				line = reader.readLine();
-				count++;
-			}
-			
-			text = raw.toString();
-			
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-		}
-		
-		return text != null ? text : "";
+		return slice(path, start - 1, Long.MAX_VALUE);
 	}
 	
+	/**
+	 * Read a file and return a string with the content of the lines between start and end, inclusive
+	 *
+	 * @param path  Path of the file to read
+	 * @param start The first line to read
+	 * @param end   The last line to read
+	 *
+	 * @return String with the content of the lines between start and end
+	 */
+	
 	@NotNull
 	public static String readFile (String path, long start, long end) {
-		StringBuilder res = new StringBuilder();
-		for (long i = start; i <= end; i++) {
-			res.append(goLine(path, i)).append(goLine(path, i).contains("\n") ? "\n" : "");
-		}
-		return res.toString();
+		return slice(path, start - 1, end);
 	}
 	
 	/**
-	 * Write a value into the last line of a file
+	 * Lazily read the lines of a file
 	 *
-	 * @param path  Path of the file to write to
-	 * @param value The value to write in the file
+	 * @param path Path of the file to read
+	 *
+	 * @return Stream of the lines of the file
+	 *
+	 * @see #lines(String, long, long)
 	 */
 	
-	public static void writeFile (String path, String value) {
-		String file = readFile(path);
+	@NotNull
+	public static Stream<String> lines (String path) {
+		return lines(path, 1, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Lazily read the lines between start and end, inclusive. Lines are decoded one by one through a reusable buffer as
+	 * the stream is consumed, so a short-circuiting operation stops reading the file. A parallel stream splits the
+	 * range at line breaks and reads the parts concurrently.
+	 * The stream reads the file as it was when the stream was created, and should be closed once it is consumed.
+	 *
+	 * @param path  Path of the file to read
+	 * @param start The first line to read
+	 * @param end   The last line to read
+	 *
+	 * @return Stream of the lines between start and end
+	 */
+	
+	@NotNull
+	public static Stream<String> lines (String path, long start, long end) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
 		
-		try (FileOutputStream outputStream = new FileOutputStream(path)) {
-			outputStream.write((file + "\n" + value).getBytes());
+		try {
+			FileCache.Entry entry = cached(file);
+			
+			if (entry != null)
+				return Arrays.stream(entry.lines(),
+				                     clamp(start - 1, entry.lines().length),
+				                     Math.max(clamp(start - 1, entry.lines().length), clamp(end, entry.lines().length)));
+			
+			LineIndex index = index(file);
+			long from = index.start(clamp(start - 1, index.lines()));
+			long to = index.start(clamp(end, index.lines()));
+			
+			if (to <= from)
+				return Stream.empty();
+			
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+			return StreamSupport.stream(new LineSpliterator(file, channel, CHARSET, from, to), false).onClose(() -> {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					logger.error(e.getMessage());
+				}
+			});
 		} catch (IOException e) {
 			logger.error(e.getMessage());
+			return Stream.empty();
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("lines", file, time);
 		}
 	}
 	
 	/**
-	 * Write a value into the selected line
+	 * Write a value into the last line of a file. Only the new bytes are written to the end of the file.
 	 *
 	 * @param path  Path of the file to write to
 	 * @param value The value to write in the file
-	 * @param line  line to write the value into the selected line
+	 */
+	
+	public static void writeFile (String path, String value) {
+		append("writeFile", path, value);
+	}
+	
+	/**
+	 * Write values into the last lines of a file, one value per line, with a single write to the end of the file
+	 *
+	 * @param path   Path of the file to write to
+	 * @param values The values to write in the file
+	 */
+	
+	public static void appendAll (String path, Collection<String> values) {
+		if (!values.isEmpty())
+			append("appendAll", path, String.join("\n", values));
+	}
+	
+	/**
+	 * Write a value into the selected line
+	 *
+	 * @param path      Path of the file to write to
+	 * @param value     The value to write in the file
+	 * @param line      line to write the value into the selected line
+	 * @param overwrite Should the value replace the line, or be inserted after it
 	 */
 	
 	public static void writeFile (String path, String value, long line, boolean overwrite) {
-		String before;
-		if (overwrite)
-			before = line > 1 ? readFile(path, line - 1) : "";
-		else
-			before = line >= 1 ? readFile(path, line) : "";
+		edit("writeFile", path, lines -> {
+			int index = clamp(overwrite ? line - 1 : line, lines.size());
+			
+			if (overwrite && index < lines.size())
+				lines.set(index, value);
+			else
+				lines.add(index, value);
+			
+			return null;
+		}, null);
+	}
+	
+	/**
+	 * Apply several changes to a file and commit them together with a single rewrite. The changes are applied to an
+	 * in-memory view of the file, and the file is only changed if all of them succeed, so no reader ever sees part of
+	 * the changes. An exception thrown by the changes is rethrown and leaves the file as it was, without failing the
+	 * changes of other callers committed along with them.
+	 * The changes run while the file is being committed, so they must only go through the given {@link Edit}: any
+	 * other change to a file through Memory from inside them is rejected with an {@link IllegalStateException}, as it
+	 * would wait for the commit it runs in. Reads through Memory see the file as it was before the changes.
+	 *
+	 * @param path Path of the file to edit
+	 * @param ops  Applies the changes to the file
+	 *
+	 * @return True if the changes were committed, false if the file couldn't be written
+	 */
+	
+	public static boolean edit (String path, Consumer<Edit> ops) {
+		RuntimeException[] failure = new RuntimeException[1];
+		boolean committed = edit("edit", path, lines -> {
+			List<String> view = new ArrayList<>(lines);
+			
+			try {
+				ops.accept(new Edit(view));
+			} catch (RuntimeException e) {
+				failure[0] = e;
+				return false;
+			}
+			
+			lines.clear();
+			lines.addAll(view);
+			return true;
+		}, false);
 		
-		String after = readFile(line + 1, path);
+		if (failure[0] != null)
+			throw failure[0];
 		
-		try (FileOutputStream outputStream = new FileOutputStream(path)) {
-			byte[] b = (before + value + "\n" + after).getBytes();
-			outputStream.write(b);
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-		}
+		return committed;
 	}
 	
 	/**
@@ -202,12 +282,81 @@ public class Memory {
 	 */
 	
 	public static void deleteLine (String path, long line) {
+		edit("deleteLine", path, lines -> {
+			if (line >= 1 && line <= lines.size())
+				lines.remove((int) line - 1);
+			
+			return null;
+		}, null);
+	}
+	
+	/**
+	 * Delete line of a file, either right away or by marking it as deleted. A marked line is skipped by every read
+	 * and costs a few bytes in a sidecar of the file instead of a rewrite of the file. The file is rewritten without
+	 * its marked lines in the background once they reach the compaction ratio, or by the next change that rewrites it.
+	 * A file too large to be cached is rewritten in the background right away, as reading around its marks would
+	 * mean reading the whole file on every read.
+	 *
+	 * @param path     Path of the file where the line is deleted
+	 * @param line     The line number to be deleted
+	 * @param deferred Should the line be marked as deleted instead of rewriting the file right away
+	 *
+	 * @see #setCompactionRatio(double)
+	 */
+	
+	public static void deleteLine (String path, long line, boolean deferred) {
+		if (!deferred) {
+			deleteLine(path, line);
+			return;
+		}
+		
+		QUEUE.checkNotCommitting();
+		long time = System.nanoTime();
+		Path file = key(path);
+		Tombstones dead;
+		boolean compact;
+		Lock lock = LOCKS.write(file);
+		lock.lock();
 		
-		try (FileOutputStream outputStream = new FileOutputStream(path)) {
-			outputStream.write((readFile(path, line - 1) + "\n" + readFile(line + 1, path)).getBytes());
+		try {
+			tombstones(file);
+			dead = deletions(file);
+			int lines = index(file).lines();
+			int index = dead.physical(line);
+			
+			if (line < 1 || index >= lines)
+				return;
+			
+			dead.add(index, Files.readAttributes(file, BasicFileAttributes.class));
+			compact = dead.count() >= compactionRatio * lines || !CACHE.fits(Files.size(file));
 		} catch (IOException e) {
 			logger.error(e.getMessage());
+			return;
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("deleteLine", file, time);
 		}
+		
+		if (compact)
+			compactLater(file, dead);
+	}
+	
+	/**
+	 * Requests a rewrite of a file without its marked lines in the background, unless one was already requested or
+	 * the calling thread is committing a change, which rewrites the file anyway
+	 *
+	 * @param file Path of the file
+	 * @param dead The marked lines of the file
+	 */
+	
+	private static void compactLater (Path file, Tombstones dead) {
+		if (QUEUE.isCommitting() || !dead.compact())
+			return;
+		
+		QUEUE.editLater(file, lines -> null).exceptionally(e -> {
+			logger.error(e.getMessage());
+			return null;
+		});
 	}
 	
 	/**
@@ -222,27 +371,7 @@ public class Memory {
 	 */
 	
 	public static boolean find (String path, String keyword, boolean ignoreCase, boolean keywordIsLine) {
-		String line;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			line = reader.readLine();
-			
-			while (line != null) {
-				if (keywordIsLine) {
-					if (line.equals(keyword) || ignoreCase && line.equalsIgnoreCase(keyword))
-						return true;
-				} else if (line.contains(keyword) || line.toLowerCase().contains(keyword.toLowerCase())) {
-					return true;
-				}
-				
-				line = reader.readLine();
-			}
-			
-			return false;
-		} catch (java.io.IOException e) {
-			logger.error(e.getMessage());
-			return false;
-		}
+		return find(path, keyword, ignoreCase, keywordIsLine, 1);
 	}
 	
 	/**
@@ -252,40 +381,13 @@ public class Memory {
 	 * @param keyword       The keyword to search
 	 * @param ignoreCase    Should the search ignore case or not
 	 * @param keywordIsLine Is the keyword a whole line or a part of a line in the file
-	 * @param start         Line to start the search from
+	 * @param start         Line to start the search from, starting from 1
 	 *
 	 * @return True if keyword is found
 	 */
 	
 	public static boolean find (String path, String keyword, boolean ignoreCase, boolean keywordIsLine, long start) {
-		String line;
-		int count = 0;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			line = reader.readLine();
-			
-			while (line != null) {
-				
-				while (count < start) {
-					line = reader.readLine();
-					count++;
-				}
-				
-				if (keywordIsLine) {
-					if (line.equals(keyword) || (ignoreCase && line.equalsIgnoreCase(keyword)))
-						return true;
-				} else if (line.contains(keyword) || line.toLowerCase().contains(keyword.toLowerCase())) {
-					return true;
-				}
-				
-				line = reader.readLine();
-			}
-			
-			return false;
-		} catch (java.io.IOException e) {
-			logger.error(e.getMessage());
-			return false;
-		}
+		return scan("find", path, start, keyword(keyword, ignoreCase, keywordIsLine), 1, false).length > 0;
 	}
 	
 	/**
@@ -300,29 +402,7 @@ public class Memory {
 	 */
 	
 	public static long findLine (String path, String keyword, boolean ignoreCase, boolean keywordIsLine) {
-		if (!find(path, keyword, ignoreCase, keywordIsLine))
-			return -1;
-		
-		String line;
-		int count = 1;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			
-			line = reader.readLine();
-			
-			while (line != null) {
-				if (findInLine(line, keyword, ignoreCase, keywordIsLine))
-					return count;
-				
-				line = reader.readLine();
-				count++;
-			}
-			
-			return -1;
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-			return -1;
-		}
+		return findLine(path, keyword, ignoreCase, keywordIsLine, 1);
 	}
 	
 	/**
@@ -331,15 +411,13 @@ public class Memory {
 	 * @param line          the line to search in.
 	 * @param keyword       the keyword to search for.
 	 * @param ignoreCase    should the search ignore case or not
-	 * @param keywordIsLine is the keyword a whole line or a part of a line in the file
+	 * @param keywordIsLine is the keyword a whole line or a part of the line.
 	 *
 	 * @return whether the keyword is in line or not, in accordance to the parameters.
 	 */
 	
 	public static boolean findInLine (String line, String keyword, boolean ignoreCase, boolean keywordIsLine) {
-		if (ignoreCase)
-			return keywordIsLine ? line.toLowerCase().contains(keyword.toLowerCase()) : line.equalsIgnoreCase(keyword);
-		return keywordIsLine ? line.contains(keyword) : line.equals(keyword);
+		return keyword(keyword, ignoreCase, keywordIsLine).test(line);
 	}
 	
 	/**
@@ -350,204 +428,1431 @@ public class Memory {
 	 * @param keyword       The keyword to find the line of
 	 * @param ignoreCase    Should the search ignore case or not
 	 * @param keywordIsLine Is the keyword a whole line or a part of a line in the file
-	 * @param start         Line to start from
+	 * @param start         Line to start from, starting from 1
 	 *
 	 * @return The line of the first occurrence of the keyword as a whole line or as a part of a line in the file
 	 */
 	
 	public static long findLine (String path, String keyword, boolean ignoreCase, boolean keywordIsLine, long start) {
-		if (!find(path, keyword, ignoreCase, keywordIsLine))
-			return -1;
-		
-		String line;
-		int count = 1;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			line = startFrom(path, start);
-			
-			while (line != null) {
-				if (findInLine(line, keyword, ignoreCase, keywordIsLine))
-					return count;
-				
-				line = reader.readLine();
-				count++;
-			}
-			
-			return -1;
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-			return -1;
-		}
+		long[] lines = scan("findLine", path, start, keyword(keyword, ignoreCase, keywordIsLine), 1, false);
+		return lines.length > 0 ? lines[0] : -1;
 	}
 	
-	private static String startFrom (String path, long start) {
-		String line = null;
-		int count = 1;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			while (count < start) {
-				line = reader.readLine();
-				count++;
-			}
-			
-			return line;
-		} catch (FileNotFoundException e) {
-			return null;
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-			return null;
-		}
-	}
+	/**
+	 * Find the lines of every occurrence of a keyword as a whole line or as a part of a line in the file
+	 *
+	 * @param path          Path of the file to find the lines of the keyword in
+	 * @param keyword       The keyword to find the lines of
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the keyword a whole line or a part of a line in the file
+	 *
+	 * @return The lines of every occurrence of the keyword, in ascending order
+	 */
 	
-	public static void clearFile (String path) {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
-			writer.write("");
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-		}
+	@NotNull
+	public static long[] findLines (String path, String keyword, boolean ignoreCase, boolean keywordIsLine) {
+		Keyword match = keyword(keyword, ignoreCase, keywordIsLine);
+		return scan("findLines", path, 1, match, Integer.MAX_VALUE, false);
 	}
 	
-	public static long findLast (String path, String keyword, boolean ignoreCase, boolean keywordIsLine) {
-		if (!find(path, keyword, ignoreCase, keywordIsLine))
-			return -1;
-		
-		String line;
-		int count = 1;
-		int res = 1;
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-			
-			line = reader.readLine();
-			
-			while (line != null) {
-				if (findInLine(line, keyword, ignoreCase, keywordIsLine))
-					return count;
-				
-				line = reader.readLine();
-				count++;
-			}
-			
-			return res;
-			
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-			return -1;
-		}
+	/**
+	 * Find the line of the first match of a regular expression in the file. The expression is compiled once and
+	 * cached, and matches anywhere in a line unless it is anchored.
+	 *
+	 * @param path       Path of the file to find the expression in
+	 * @param regex      The regular expression to find
+	 * @param ignoreCase Should the search ignore case or not
+	 *
+	 * @return The line of the first match, or -1 if the expression wasn't found or is invalid
+	 */
+	
+	public static long findRegex (String path, String regex, boolean ignoreCase) {
+		long[] lines = scanRegex("findRegex", path, regex, ignoreCase, 1);
+		return lines.length > 0 ? lines[0] : -1;
 	}
 	
 	/**
-	 * Returns the content of a specific line
+	 * Find the lines of every match of a regular expression in the file. The expression is compiled once and cached,
+	 * and matches anywhere in a line unless it is anchored.
 	 *
-	 * @param path Path of the file that has the line
-	 * @param line Number of the line to get the content of
+	 * @param path       Path of the file to find the expression in
+	 * @param regex      The regular expression to find
+	 * @param ignoreCase Should the search ignore case or not
 	 *
-	 * @return The content of a specific line
+	 * @return The lines of every match, in ascending order, or none if the expression is invalid
 	 */
 	
-	public static String goLine (String path, long line) {
-		return readFile(line, path).split("\n")[(int) line];
+	@NotNull
+	public static long[] findLinesRegex (String path, String regex, boolean ignoreCase) {
+		return scanRegex("findLinesRegex", path, regex, ignoreCase, Integer.MAX_VALUE);
 	}
 	
-	public static boolean replace (String path, String oldValue, String newValue, boolean ignoreCase,
-	                               boolean keywordIsLine) {
-		if (!find(path, oldValue, ignoreCase, keywordIsLine)) {
-			logger.info(VALUE_WASNT_FOUND, oldValue);
-			return false;
-		}
-		
-		long line = findLine(path, oldValue, ignoreCase, keywordIsLine);
-		String readLine = readFile(line, path).split("\n")[0];
-		
-		clearFile(path);
-		writeFile(path,
-		          ignoreCase
-		          ? readLine.toLowerCase().replace(oldValue.toLowerCase(), newValue.toLowerCase())
-		          : readLine.replace(oldValue, newValue),
-		          line,
-		          true);
-		
-		return true;
-	}
+	/**
+	 * Replaces every match of a regular expression in the file, in a single pass over the file
+	 *
+	 * @param path        Path of the file
+	 * @param regex       The regular expression to replace
+	 * @param replacement The replacement, which can refer to groups of the expression as in
+	 *                    {@link Matcher#replaceAll(String)}
+	 * @param ignoreCase  Should the search ignore case or not
+	 *
+	 * @return The amount of lines the expression was replaced in
+	 */
 	
-	public static boolean replace (String path, String oldValue, String newValue, boolean ignoreCase,
-	                               boolean keywordIsLine, long line) {
-		if (!find(path, oldValue, ignoreCase, keywordIsLine)) {
-			logger.info(VALUE_WASNT_FOUND, oldValue);
-			return false;
-		}
+	public static int replaceRegex (String path, String regex, String replacement, boolean ignoreCase) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		int count;
 		
-		String readLine = readFile(line, path).split("\n")[0];
-		
-		clearFile(path);
-		writeFile(path,
-		          ignoreCase
-		          ? readLine.toLowerCase().replace(oldValue.toLowerCase(), newValue.toLowerCase())
-		          : readLine.replace(oldValue, newValue),
-		          line,
-		          true);
-		
-		return true;
-	}
-	
-	public static boolean replaceFrom (String path, String oldValue, String newValue, boolean ignoreCase,
-	                                   boolean keywordIsLine, long start) {
-		if (!find(path, oldValue, ignoreCase, keywordIsLine)) {
-			logger.info(VALUE_WASNT_FOUND, oldValue);
-			return false;
+		try {
+			Matcher matcher = pattern(regex, ignoreCase).matcher("");
+			count = QUEUE.transform(file, line -> matcher.reset(line).find() ? matcher.replaceAll(replacement) : null);
+		} catch (PatternSyntaxException e) {
+			logger.error(e.getMessage());
+			return 0;
+		} catch (CompletionException e) {
+			logger.error(e.getCause().getMessage());
+			return 0;
+		} finally {
+			MemoryMetrics.call("replaceRegex", file, time);
 		}
 		
-		long line = findLine(path, oldValue, ignoreCase, keywordIsLine, start);
-		String readLine = readFile(line, path).split("\n")[0];
-		
-		clearFile(path);
-		writeFile(path,
-		          ignoreCase
-		          ? readLine.toLowerCase().replace(oldValue.toLowerCase(), newValue.toLowerCase())
-		          : readLine.replace(oldValue, newValue),
-		          line,
-		          true);
+		if (count == 0)
+			logger.info(VALUE_WASNT_FOUND, regex);
 		
-		return true;
+		return count;
 	}
 	
-	public static boolean replaceAll (String path, String oldValue, String newValue, boolean ignoreCase,
-	                                  boolean keywordIsLine) {
-		if (!find(path, oldValue, ignoreCase, keywordIsLine)) {
-			logger.info(VALUE_WASNT_FOUND, oldValue);
-			return false;
-		}
-		
-		long line = findLine(path, oldValue, ignoreCase, keywordIsLine);
-		
-		while (line != -1) {
-			String readLine = readFile(line, path).split("\n")[0];
-			
-			clearFile(path);
-			writeFile(path,
-			          ignoreCase
-			          ? readLine.toLowerCase().replace(oldValue.toLowerCase(), newValue.toLowerCase())
-			          : readLine.replace(oldValue, newValue),
-			          line,
-			          true);
-			
-			line = findLine(path, oldValue, ignoreCase, keywordIsLine, line + 1);
-		}
-		
-		return true;
+	/**
+	 * Replace the content of a file with values, one value per line, with a single rewrite of the file
+	 *
+	 * @param path   Path of the file to write to
+	 * @param values The new lines of the file
+	 */
+	
+	public static void overwriteFile (String path, Collection<String> values) {
+		edit("overwriteFile", path, lines -> {
+			lines.clear();
+			lines.addAll(values);
+			return null;
+		}, null);
 	}
 	
 	/**
-	 * Returns the amount of lines a file has.
-	 *
-	 * @param path the path of the file.
+	 * Find the lines of every occurrence of several keywords as a part of a line, in a single pass over the file
 	 *
-	 * @return the amount of lines a file has.
+	 * @param path       Path of the file to find the keywords in
+	 * @param keywords   The keywords to find the lines of
+	 * @param ignoreCase Should the search ignore case or not
 	 *
-	 * @throws IOException if the file doesn't exist.
+	 * @return The lines of every occurrence of each keyword, in ascending order, by keyword
 	 */
 	
-	public static int countLines (String path) throws IOException {
-		try (InputStream is = new BufferedInputStream(new FileInputStream(path))) {
+	@NotNull
+	public static Map<String, long[]> findAll (String path, Collection<String> keywords, boolean ignoreCase) {
+		return findAll(path, KeywordSet.compile(keywords, ignoreCase));
+	}
+	
+	/**
+	 * Find the lines of every occurrence of compiled keywords as a part of a line, in a single pass over the file
+	 *
+	 * @param path     Path of the file to find the keywords in
+	 * @param keywords The compiled keywords, which can be reused across calls
+	 *
+	 * @return The lines of every occurrence of each keyword, in ascending order, by keyword
+	 */
+	
+	@NotNull
+	public static Map<String, long[]> findAll (String path, KeywordSet keywords) {
+		return scanAll("findAll", path, keywords, Integer.MAX_VALUE).byKeyword();
+	}
+	
+	/**
+	 * Find the first line that contains any of the compiled keywords. The search stops at the first match.
+	 *
+	 * @param path     Path of the file to find the keywords in
+	 * @param keywords The compiled keywords, which can be reused across calls
+	 *
+	 * @return The first line that contains any of the keywords, or -1 if none was found
+	 */
+	
+	public static long findAny (String path, KeywordSet keywords) {
+		return scanAll("findAny", path, keywords, 1).first();
+	}
+	
+	public static void clearFile (String path) {
+		edit("clearFile", path, lines -> {
+			lines.clear();
+			return null;
+		}, null);
+	}
+	
+	/**
+	 * Sets how many bytes of files Memory keeps cached in memory. Reads of cached files don't touch the disk
+	 * unless the file was changed outside of Memory. The least recently used files are evicted first.
+	 *
+	 * @param bytes The budget in bytes, 0 to disable the cache
+	 */
+	
+	public static void setCacheBudget (long bytes) {
+		CACHE.setBudget(bytes);
+	}
+	
+	/**
+	 * Sets how long Memory collects changes to a file that arrive while the file is being written, before it writes
+	 * the file with all of them at once. A change to a file nothing else is writing to is written right away.
+	 * Callers of writing methods return once their change is on disk.
+	 *
+	 * @param millis The window in milliseconds
+	 */
+	
+	public static void setCommitWindow (long millis) {
+		QUEUE.setWindow(millis);
+	}
+	
+	/**
+	 * Sets the size from which files that aren't cached are memory mapped for searching and counting lines, instead
+	 * of being read through a buffer. Mapping is disabled by default, because on some systems a mapped file can't be
+	 * replaced until the mapping is garbage collected.
+	 *
+	 * @param bytes The threshold in bytes, {@link Long#MAX_VALUE} to disable mapping
+	 */
+	
+	public static void setMappedThreshold (long bytes) {
+		mappedThreshold = Math.max(0, bytes);
+	}
+	
+	/**
+	 * Sets the size from which files that aren't cached are searched and counted on several cores. Such files are
+	 * split into segments at line breaks, which are scanned in parallel and merged back in order.
+	 *
+	 * @param bytes The threshold in bytes, {@link Long#MAX_VALUE} to always scan on a single thread
+	 */
+	
+	public static void setParallelThreshold (long bytes) {
+		parallelThreshold = Math.max(0, bytes);
+	}
+	
+	/**
+	 * Sets the share of lines of a file that can be marked as deleted before the file is rewritten without them
+	 *
+	 * @param ratio The share of marked lines, between 0 and 1
+	 *
+	 * @see #deleteLine(String, long, boolean)
+	 */
+	
+	public static void setCompactionRatio (double ratio) {
+		compactionRatio = Math.max(0, Math.min(ratio, 1));
+	}
+	
+	/**
+	 * Sets how many compiled regular expressions Memory keeps for the regex methods. The least recently used ones are
+	 * evicted first.
+	 *
+	 * @param patterns The amount of expressions, 0 to compile them on every call
+	 */
+	
+	public static void setPatternCacheSize (int patterns) {
+		PATTERNS.setCapacity(patterns);
+	}
+	
+	/**
+	 * Find the line of the last occurrence of a keyword as a whole line or as a part of a line in the file
+	 *
+	 * @param path          Path of the file to find the line of the keyword in
+	 * @param keyword       The keyword to find the line of
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the keyword a whole line or a part of a line in the file
+	 *
+	 * @return The line of the last occurrence of the keyword, or -1 if it wasn't found
+	 */
+	
+	public static long findLast (String path, String keyword, boolean ignoreCase, boolean keywordIsLine) {
+		Keyword match = keyword(keyword, ignoreCase, keywordIsLine);
+		long[] lines = scan("findLast", path, 1, match, 1, true);
+		return lines.length > 0 ? lines[0] : -1;
+	}
+	
+	/**
+	 * Keeps a search index of a file, so find, findLine, findLines and findLast are answered from the index instead
+	 * of a scan of the file, except for keywords shorter than three characters that may be a part of a line. The index
+	 * holds line numbers only, and reads the lines it finds through the cache or the line index of the file. It is
+	 * kept up to date by Memory's writes, saved next to the file, and loaded from there the next time if the file
+	 * hasn't changed since.
+	 *
+	 * @param path Path of the file to index
+	 */
+	
+	public static void enableSearchIndex (String path) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			SearchIndex search = SearchIndex.load(file);
+			
+			if (search == null) {
+				search = buildSearch(file);
+				search.save(file);
+			}
+			
+			SEARCH_INDEXES.put(file, search);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("enableSearchIndex", file, time);
+		}
+	}
+	
+	/**
+	 * Stops keeping the search index of a file and deletes its saved copy
+	 *
+	 * @param path Path of the indexed file
+	 */
+	
+	public static void disableSearchIndex (String path) {
+		Path file = key(path);
+		SEARCH_INDEXES.remove(file);
+		
+		try {
+			SearchIndex.delete(file);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Load the lines of a file from its binary snapshot. The snapshot is memory mapped and each line is decoded only
+	 * when it is read. If the snapshot is missing, damaged or older than the file, the lines are read from the file
+	 * and a fresh snapshot is saved for the next load.
+	 *
+	 * @param path Path of the file to load
+	 *
+	 * @return The lines of the file
+	 */
+	
+	@NotNull
+	public static List<String> loadSnapshot (String path) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			List<String> lines = tombstones(file) == null ? Snapshot.load(file, attributes, CHARSET) : null;
+			
+			if (lines != null)
+				return Collections.unmodifiableList(lines);
+			
+			lines = readLines(path);
+			Snapshot.save(file, attributes, lines, CHARSET);
+			return Collections.unmodifiableList(lines);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return Collections.emptyList();
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("loadSnapshot", file, time);
+		}
+	}
+	
+	/**
+	 * Save a binary snapshot of the lines of a file, so the next load doesn't need to parse the file
+	 *
+	 * @param path Path of the file
+	 */
+	
+	public static void saveSnapshot (String path) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			Snapshot.save(file, Files.readAttributes(file, BasicFileAttributes.class), readLines(path), CHARSET);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("saveSnapshot", file, time);
+		}
+	}
+	
+	/**
+	 * Delete the binary snapshot of a file
+	 *
+	 * @param path Path of the file
+	 */
+	
+	public static void deleteSnapshot (String path) {
+		try {
+			Snapshot.delete(key(path));
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the content of a specific line
+	 *
+	 * @param path Path of the file that has the line
+	 * @param line Number of the line to get the content of, starting from 1
+	 *
+	 * @return The content of a specific line, or an empty string if the file has no such line
+	 */
+	
+	@NotNull
+	public static String goLine (String path, long line) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			Tombstones dead = tombstones(file);
+			FileCache.Entry entry = isUncachedView(file, dead) ? null : cached(file);
+			
+			if (entry != null)
+				return line < 1 || line > entry.lines().length ? "" : entry.lines()[(int) line - 1];
+			
+			LineIndex index = index(file);
+			int physical = dead != null && line >= 1 ? dead.physical(line) : (int) line - 1;
+			
+			if (line < 1 || physical >= index.lines())
+				return "";
+			
+			String res = read(file, index.start(physical), index.end(physical));
+			return res.endsWith("\r") ? res.substring(0, res.length() - 1) : res;
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return "";
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("goLine", file, time);
+		}
+	}
+	
+	public static boolean replace (String path, String oldValue, String newValue, boolean ignoreCase,
+	                               boolean keywordIsLine) {
+		return replaceFrom(path, oldValue, newValue, ignoreCase, keywordIsLine, 1);
+	}
+	
+	public static boolean replace (String path, String oldValue, String newValue, boolean ignoreCase,
+	                               boolean keywordIsLine, long line) {
+		Keyword match = keyword(oldValue, ignoreCase, keywordIsLine);
+		boolean replaced = edit("replace", path, lines -> {
+			int index = (int) line - 1;
+			
+			if (index < 0 || index >= lines.size() || !match.test(lines.get(index)))
+				return false;
+			
+			lines.set(index, replaceInLine(lines.get(index), oldValue, newValue, ignoreCase));
+			return true;
+		}, false);
+		
+		if (!replaced)
+			logger.info(VALUE_WASNT_FOUND, oldValue);
+		
+		return replaced;
+	}
+	
+	public static boolean replaceFrom (String path, String oldValue, String newValue, boolean ignoreCase,
+	                                   boolean keywordIsLine, long start) {
+		Keyword match = keyword(oldValue, ignoreCase, keywordIsLine);
+		boolean replaced = edit("replaceFrom", path, lines -> {
+			for (int i = clamp(start - 1, lines.size()); i < lines.size(); i++) {
+				if (match.test(lines.get(i))) {
+					lines.set(i, replaceInLine(lines.get(i), oldValue, newValue, ignoreCase));
+					return true;
+				}
+			}
+			
+			return false;
+		}, false);
+		
+		if (!replaced)
+			logger.info(VALUE_WASNT_FOUND, oldValue);
+		
+		return replaced;
+	}
+	
+	/**
+	 * Replaces a value in every line that contains it, in a single pass over the file
+	 *
+	 * @param path          Path of the file
+	 * @param oldValue      The value to replace
+	 * @param newValue      The value to replace with
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the value a whole line or a part of a line in the file
+	 *
+	 * @return The amount of lines the value was replaced in
+	 */
+	
+	public static int replaceAll (String path, String oldValue, String newValue, boolean ignoreCase,
+	                              boolean keywordIsLine) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Keyword match = keyword(oldValue, ignoreCase, keywordIsLine);
+		int count;
+		
+		try {
+			count = QUEUE.transform(file,
+			                        line -> match.test(line)
+			                                ? replaceInLine(line, oldValue, newValue, ignoreCase)
+			                                : null);
+		} catch (CompletionException e) {
+			logger.error(e.getCause().getMessage());
+			return 0;
+		} finally {
+			MemoryMetrics.call("replaceAll", file, time);
+		}
+		
+		if (count == 0)
+			logger.info(VALUE_WASNT_FOUND, oldValue);
+		
+		return count;
+	}
+	
+	/**
+	 * Prepares a keyword for the find and replace methods, so all of them match the same lines for the same arguments
+	 *
+	 * @param keyword       The keyword to search
+	 * @param ignoreCase    Should the search ignore case or not
+	 * @param keywordIsLine Is the keyword a whole line or a part of a line in the file
+	 *
+	 * @return The prepared keyword
+	 */
+	
+	static Keyword keyword (String keyword, boolean ignoreCase, boolean keywordIsLine) {
+		return new Keyword(keyword, ignoreCase, keywordIsLine, CHARSET);
+	}
+	
+	static String replaceInLine (String line, String oldValue, String newValue, boolean ignoreCase) {
+		return ignoreCase
+		       ? line.toLowerCase().replace(oldValue.toLowerCase(), newValue.toLowerCase())
+		       : line.replace(oldValue, newValue);
+	}
+	
+	/**
+	 * Returns the line index of a file, building it again if the file was changed outside of Memory
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The line index of the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static LineIndex index (Path file) throws IOException {
+		LineIndex index = INDEXES.get(file);
+		
+		if (index == null || !index.isCurrent(file)) {
+			index = LineIndex.build(file);
+			MemoryMetrics.read(file, index.length());
+			INDEXES.put(file, index);
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Returns the key files are locked, cached and indexed by
+	 *
+	 * @param path Path of the file
+	 *
+	 * @return The canonical path of the file
+	 */
+	
+	static Path key (String path) {
+		return LOCKS.key(path);
+	}
+	
+	/**
+	 * Returns the text of a range of lines, from the cache if the file is cached or through the line index otherwise
+	 *
+	 * @param path Path of the file
+	 * @param from Index of the first line, starting from 0
+	 * @param to   Index right after the last line
+	 *
+	 * @return The text of the lines, including their line breaks
+	 */
+	
+	@NotNull
+	private static String slice (String path, long from, long to) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			FileCache.Entry entry = cached(file);
+			
+			if (entry != null)
+				return entry.text(clamp(from, entry.lines().length), clamp(to, entry.lines().length));
+			
+			LineIndex index = index(file);
+			return read(file, index.start(clamp(from, index.lines())), index.start(clamp(to, index.lines())));
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return "";
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("readFile", file, time);
+		}
+	}
+	
+	private static List<String> readLines (String path) {
+		try (Stream<String> lines = lines(path)) {
+			return lines.collect(Collectors.toList());
+		}
+	}
+	
+	private static int clamp (long line, int lines) {
+		return (int) Math.max(0, Math.min(line, lines));
+	}
+	
+	/**
+	 * Returns the numbers of the lines from start that match a keyword. Indexed files are answered from their search
+	 * index, cached files are searched in memory, other files are searched on their raw bytes, memory mapped if they
+	 * reach the mapping threshold and on several cores if they reach the parallel threshold and start is 1.
+	 *
+	 * @param method  Name of the calling method, for the metrics
+	 * @param path    Path of the file
+	 * @param start   Line to start from, starting from 1
+	 * @param keyword The keyword to match
+	 * @param limit   The maximal amount of lines to return
+	 * @param last    Should the last matching lines be returned instead of the first ones
+	 *
+	 * @return The numbers of the matching lines, in ascending order
+	 */
+	
+	@NotNull
+	private static long[] scan (String method, String path, long start, Keyword keyword, int limit,
+	                             boolean last) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			SearchIndex search = tombstones(file) == null ? search(file) : null;
+			int[] indexed = search != null ? indexed(file, search, keyword, start, limit, last) : null;
+			
+			if (indexed != null) {
+				long[] res = new long[indexed.length];
+				
+				for (int i = 0; i < indexed.length; i++)
+					res[i] = indexed[i] + 1L;
+				
+				return res;
+			}
+			
+			List<Long> found = new ArrayList<>();
+			FileCache.Entry entry = cached(file);
+			
+			if (entry != null) {
+				String[] lines = entry.lines();
+				
+				for (int i = clamp(start - 1, lines.length); i < lines.length && (last || found.size() < limit); i++) {
+					if (keyword.test(lines[i]))
+						found.add(i + 1L);
+				}
+			} else if (start <= 1 && isParallel(file)) {
+				ParallelScanner.Found parallel =
+						ParallelScanner.find(file, isMapped(file), () -> keyword::matches, limit, last);
+				MemoryMetrics.read(file, parallel.read());
+				return parallel.lines();
+			} else {
+				long read = LineScanner.scan(file, isMapped(file), (buffer, from, to, line) -> {
+					if (line >= start && keyword.matches(buffer, from, to))
+						found.add(line);
+					
+					return last || found.size() < limit;
+				});
+				MemoryMetrics.read(file, read);
+			}
+			
+			List<Long> lines = last ? found.subList(Math.max(0, found.size() - limit), found.size()) : found;
+			long[] res = new long[lines.size()];
+			
+			for (int i = 0; i < res.length; i++)
+				res[i] = lines.get(i);
+			
+			return res;
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return new long[0];
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call(method, file, time);
+		}
+	}
+	
+	/**
+	 * Matches every line of a file against a set of keywords in a single pass. Cached files are matched in memory, and
+	 * other files on their raw bytes, on several cores if they reach the parallel threshold.
+	 *
+	 * @param method   Name of the calling method, for the metrics
+	 * @param path     Path of the file
+	 * @param keywords The compiled keywords
+	 * @param limit    The amount of matching lines after which the pass can stop
+	 *
+	 * @return The matches of the keywords
+	 */
+	
+	private static KeywordSet.Matches scanAll (String method, String path, KeywordSet keywords, int limit) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		KeywordSet.Matches matches = keywords.matches(limit);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			FileCache.Entry entry = cached(file);
+			
+			if (entry != null) {
+				String[] lines = entry.lines();
+				
+				for (int i = 0; i < lines.length && !matches.isDone(); i++)
+					keywords.match(lines[i], i + 1L, matches);
+			} else if (isParallel(file)) {
+				ParallelScanner.Matched parallel = ParallelScanner.match(file, isMapped(file), keywords, limit);
+				MemoryMetrics.read(file, parallel.read());
+				return parallel.matches();
+			} else {
+				long read = LineScanner.scan(file, isMapped(file), (buffer, from, to, line) -> {
+					keywords.match(buffer, from, to, line, matches);
+					return !matches.isDone();
+				});
+				MemoryMetrics.read(file, read);
+			}
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call(method, file, time);
+		}
+		
+		return matches;
+	}
+	
+	/**
+	 * Returns the numbers of the first lines that match a regular expression, with a single matcher reused for every
+	 * line. Cached files are matched in memory, and other files are decoded line by line into a reused buffer, with a
+	 * matcher and a buffer for each segment if they reach the parallel threshold.
+	 *
+	 * @param method     Name of the calling method, for the metrics
+	 * @param path       Path of the file
+	 * @param regex      The regular expression
+	 * @param ignoreCase Should the match ignore case or not
+	 * @param limit      The maximal amount of lines to return
+	 *
+	 * @return The numbers of the matching lines, in ascending order
+	 */
+	
+	@NotNull
+	private static long[] scanRegex (String method, String path, String regex, boolean ignoreCase, int limit) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			Pattern pattern = pattern(regex, ignoreCase);
+			Matcher matcher = pattern.matcher("");
+			long[] found = new long[16];
+			int size = 0;
+			FileCache.Entry entry = cached(file);
+			
+			if (entry != null) {
+				String[] lines = entry.lines();
+				
+				for (int i = 0; i < lines.length && size < limit; i++) {
+					if (matcher.reset(lines[i]).find()) {
+						if (size == found.length)
+							found = Arrays.copyOf(found, size * 2);
+						
+						found[size++] = i + 1L;
+					}
+				}
+				
+				return Arrays.copyOf(found, size);
+			}
+			
+			if (isParallel(file)) {
+				ParallelScanner.Found parallel = ParallelScanner.find(file, isMapped(file), () -> {
+					LineDecoder segment = new LineDecoder(CHARSET);
+					Matcher matches = pattern.matcher("");
+					return (buffer, from, to) -> matches.reset(segment.decode(buffer, from, to)).find();
+				}, limit, false);
+				MemoryMetrics.read(file, parallel.read());
+				return parallel.lines();
+			}
+			
+			LineDecoder decoder = new LineDecoder(CHARSET);
+			List<Long> lines = new ArrayList<>();
+			long read = LineScanner.scan(file, isMapped(file), (buffer, from, to, line) -> {
+				if (matcher.reset(decoder.decode(buffer, from, to)).find())
+					lines.add(line);
+				
+				return lines.size() < limit;
+			});
+			MemoryMetrics.read(file, read);
+			
+			long[] res = new long[lines.size()];
+			
+			for (int i = 0; i < res.length; i++)
+				res[i] = lines.get(i);
+			
+			return res;
+		} catch (PatternSyntaxException | IOException e) {
+			logger.error(e.getMessage());
+			return new long[0];
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call(method, file, time);
+		}
+	}
+	
+	private static Pattern pattern (String regex, boolean ignoreCase) {
+		return PATTERNS.get(regex, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+	}
+	
+	/**
+	 * Returns the search index of a file, building it again if the file was changed outside of Memory
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The search index of the file, or null if the file isn't indexed
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static SearchIndex search (Path file) throws IOException {
+		SearchIndex search = SEARCH_INDEXES.get(file);
+		
+		if (search == null || !Files.exists(file))
+			return null;
+		
+		if (!search.isCurrent(Files.readAttributes(file, BasicFileAttributes.class))) {
+			search = buildSearch(file);
+			SEARCH_INDEXES.put(file, search);
+		}
+		
+		return search;
+	}
+	
+	/**
+	 * Finds the lines matching a keyword through the search index of a file, reading the candidate lines from the
+	 * cache or through the line index
+	 *
+	 * @param file    Path of the file
+	 * @param search  The search index of the file
+	 * @param keyword The keyword to match
+	 * @param start   Line to start from, starting from 1
+	 * @param limit   The maximal amount of lines to return
+	 * @param last    Should the last matching lines be returned instead of the first ones
+	 *
+	 * @return The indexes of the matching lines, starting from 0, or null if the file has to be scanned instead
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static int[] indexed (Path file, SearchIndex search, Keyword keyword, long start, int limit,
+	                              boolean last) throws IOException {
+		int from = clamp(start - 1, Integer.MAX_VALUE);
+		FileCache.Entry entry = CACHE.get(file);
+		
+		if (entry != null)
+			return entry.lines().length == search.lines()
+			       ? search.find(keyword, from, limit, last, line -> entry.lines()[line])
+			       : null;
+		
+		LineIndex index = index(file);
+		
+		if (index.lines() != search.lines())
+			return null;
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return search.find(keyword, from, limit, last, line -> {
+				String text = read(file, channel, index.start(line), index.end(line));
+				return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+			});
+		}
+	}
+	
+	private static SearchIndex buildSearch (Path file) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		FileCache.Entry entry = cached(file);
+		String[] lines = entry != null ? entry.lines() : FileCache.split(readAll(file));
+		return SearchIndex.of(lines).stamp(attributes);
+	}
+	
+	/**
+	 * Returns the lines of a file to read from memory: the lines that aren't marked as deleted if the file has marked
+	 * lines, its cached lines otherwise. The lines that aren't marked are cached along with the file, under the same
+	 * budget, until the marks or the file change. If the file is too large to be cached they are filtered for this
+	 * read only and the file is compacted in the background, so the following reads use the line index, mapping and
+	 * parallel scans again. Until then, readers of single lines map them through the line index instead.
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The lines of the file, or null if the file has no marked lines and is too large to be cached
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static FileCache.Entry cached (Path file) throws IOException {
+		Tombstones dead = tombstones(file);
+		
+		if (dead == null)
+			return CACHE.get(file);
+		
+		long size = Files.size(file);
+		long version = dead.version();
+		FileCache.Entry view = CACHE.get(dead.sidecar(), size, version);
+		
+		if (view != null)
+			return view;
+		
+		FileCache.Entry entry = CACHE.get(file);
+		String content = entry != null ? "" : readAll(file);
+		String[] live = dead.filter(entry != null ? entry.lines() : FileCache.split(content));
+		boolean newLine = entry != null ? entry.endsWithNewLine() : content.endsWith("\n");
+		view = CACHE.put(dead.sidecar(), live, newLine, size, version);
+		
+		if (view != null)
+			return view;
+		
+		compactLater(file, dead);
+		return FileCache.view(live, newLine);
+	}
+	
+	/**
+	 * Checks if the lines of a file that aren't marked as deleted can't be cached, so reading them means reading the
+	 * whole file
+	 *
+	 * @param file Path of the file
+	 * @param dead The marked lines of the file, or null if it has none
+	 *
+	 * @return True if the file has marked lines and is too large to be cached
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static boolean isUncachedView (Path file, Tombstones dead) throws IOException {
+		return dead != null && !CACHE.fits(Files.size(file));
+	}
+	
+	/**
+	 * Returns the lines of a file marked as deleted, dropping them if the file was changed outside of Memory
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The marked lines of the file, or null if it has none
+	 *
+	 * @throws IOException if the marked lines can't be read
+	 */
+	
+	private static Tombstones tombstones (Path file) throws IOException {
+		Tombstones dead = deletions(file);
+		
+		if (dead.isEmpty())
+			return null;
+		
+		if (!Files.exists(file) || !dead.isCurrent(Files.readAttributes(file, BasicFileAttributes.class))) {
+			clear(dead);
+			return null;
+		}
+		
+		return dead;
+	}
+	
+	/**
+	 * Forgets the marked lines of a file along with its cached lines that aren't marked
+	 *
+	 * @param dead The marked lines of the file
+	 *
+	 * @throws IOException if the marked lines can't be deleted
+	 */
+	
+	private static void clear (Tombstones dead) throws IOException {
+		dead.clear();
+		CACHE.remove(dead.sidecar());
+	}
+	
+	private static Tombstones deletions (Path file) throws IOException {
+		Tombstones dead = TOMBSTONES.get(file);
+		
+		if (dead == null) {
+			dead = Tombstones.load(file);
+			Tombstones loaded = TOMBSTONES.putIfAbsent(file, dead);
+			
+			if (loaded != null)
+				dead = loaded;
+		}
+		
+		return dead;
+	}
+	
+	private static String readAll (Path file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		MemoryMetrics.read(file, bytes.length);
+		return new String(bytes, CHARSET);
+	}
+	
+	private static void saveSearchIndexes () {
+		for (Map.Entry<Path, SearchIndex> search : SEARCH_INDEXES.entrySet()) {
+			try {
+				if (search.getValue().isDirty())
+					search.getValue().save(search.getKey());
+			} catch (IOException e) {
+				logger.error(e.getMessage());
+			}
+		}
+	}
+	
+	private static boolean isMapped (Path file) throws IOException {
+		return Files.size(file) >= mappedThreshold;
+	}
+	
+	private static boolean isParallel (Path file) throws IOException {
+		return Files.size(file) >= parallelThreshold;
+	}
+	
+	/**
+	 * Reads the bytes between two offsets of a file
+	 *
+	 * @param file Path of the file
+	 * @param from Offset of the first byte to read
+	 * @param to   Offset right after the last byte to read
+	 *
+	 * @return The decoded bytes
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static String read (Path file, long from, long to) throws IOException {
+		if (to <= from)
+			return "";
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(file, channel, from, to);
+		}
+	}
+	
+	private static String read (Path file, FileChannel channel, long from, long to) throws IOException {
+		if (to <= from)
+			return "";
+		
+		MemoryMetrics.read(file, to - from);
+		ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+		
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, from + buffer.position()) == -1)
+				break;
+		}
+		
+		return new String(buffer.array(), 0, buffer.position(), CHARSET);
+	}
+	
+	/**
+	 * Queues a change to the lines of a file and waits until it is on disk
+	 *
+	 * @param method    Name of the calling method, for the metrics
+	 * @param path      Path of the file
+	 * @param edit      Changes the lines of the file and returns the result of the change
+	 * @param otherwise The result to return if the file couldn't be written
+	 * @param <T>       Type of the result
+	 *
+	 * @return The result of the change
+	 */
+	
+	private static <T> T edit (String method, String path, Function<List<String>, T> edit, T otherwise) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		
+		try {
+			return QUEUE.edit(file, edit);
+		} catch (CompletionException e) {
+			logger.error(e.getCause().getMessage());
+			return otherwise;
+		} finally {
+			MemoryMetrics.call(method, file, time);
+		}
+	}
+	
+	/**
+	 * Queues text to be appended to a file and waits until it is on disk
+	 *
+	 * @param method Name of the calling method, for the metrics
+	 * @param path   Path of the file
+	 * @param text   The text to append as new lines
+	 */
+	
+	private static void append (String method, String path, String text) {
+		long time = System.nanoTime();
+		Path file = key(path);
+		
+		try {
+			QUEUE.append(file, text);
+		} catch (CompletionException e) {
+			logger.error(e.getCause().getMessage());
+		} finally {
+			MemoryMetrics.call(method, file, time);
+		}
+	}
+	
+	/**
+	 * Commits a batch of queued changes to a file. A batch of appends is written to the end of the file, a batch of
+	 * line transformations is streamed from the file to its replacement, and any other batch is applied to the lines
+	 * of the file in memory and written with a single rewrite. Readers of the file wait until the batch is committed.
+	 *
+	 * @param file  Path of the file
+	 * @param batch The queued changes, in the order they were queued
+	 */
+	
+	private static void commit (Path file, List<WriteQueue.Pending> batch) {
+		Lock lock = LOCKS.write(file);
+		lock.lock();
+		
+		try {
+			List<String> appended = new ArrayList<>(batch.size());
+			boolean transforms = true;
+			
+			for (WriteQueue.Pending change : batch) {
+				transforms &= change.isTransform();
+				
+				if (appended != null && change.appended() != null)
+					appended.add(change.appended());
+				else
+					appended = null;
+			}
+			
+			if (appended != null) {
+				extend(file, String.join("\n", appended));
+			} else if (transforms) {
+				stream(file, batch);
+			} else {
+				boolean exists = Files.exists(file);
+				Tombstones dead = exists ? tombstones(file) : null;
+				SearchIndex search = search(file);
+				FileCache.Entry entry = exists ? cached(file) : null;
+				String content = entry != null || !exists ? "" : readAll(file);
+				String[] current = entry != null ? entry.lines() : FileCache.split(content);
+				boolean newLine = entry != null ? entry.endsWithNewLine() : content.endsWith("\n");
+				List<String> lines = new ArrayList<>(Arrays.asList(current));
+				
+				for (WriteQueue.Pending change : batch)
+					change.apply(lines);
+				
+				if (!exists || dead != null || !lines.equals(Arrays.asList(current))) {
+					boolean end = !lines.isEmpty() && (newLine || lines.get(lines.size() - 1).isEmpty());
+					BasicFileAttributes attributes = rewrite(file, String.join("\n", lines) + (end ? "\n" : ""));
+					
+					if (dead != null)
+						clear(dead);
+					
+					if (search != null)
+						search.update(Arrays.asList(current), lines).stamp(attributes);
+				}
+			}
+		} catch (IOException e) {
+			for (WriteQueue.Pending change : batch)
+				change.fail(e);
+			return;
+		} finally {
+			lock.unlock();
+		}
+		
+		for (WriteQueue.Pending change : batch)
+			change.complete();
+	}
+	
+	/**
+	 * Replaces a file with new content and keeps its line index and cached lines current.
+	 * The content is written to a temporary file next to the file and flushed to disk, then moved over the file, so
+	 * the file is never seen empty or half written.
+	 *
+	 * @param file    Path of the file
+	 * @param content The new content of the file
+	 *
+	 * @return The attributes of the written file
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	
+	private static BasicFileAttributes rewrite (Path file, String content) throws IOException {
+		byte[] bytes = content.getBytes(CHARSET);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		
+		try {
+			try (FileChannel channel = FileChannel.open(temp,
+			                                            StandardOpenOption.CREATE,
+			                                            StandardOpenOption.TRUNCATE_EXISTING,
+			                                            StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				
+				channel.force(true);
+			}
+			
+			replace(temp, file);
+		} catch (IOException e) {
+			INDEXES.remove(file);
+			CACHE.remove(file);
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		
+		MemoryMetrics.written(file, bytes.length, true);
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		INDEXES.put(file, LineIndex.of(bytes).stamp(attributes));
+		CACHE.put(file, content, bytes.length, attributes.lastModifiedTime().toMillis());
+		return attributes;
+	}
+	
+	/**
+	 * Applies line transformations to a file in a single pass. Each line is read once, transformed and written to a
+	 * temporary file next to the file, which replaces the file only if a line changed.
+	 *
+	 * @param file  Path of the file
+	 * @param batch The queued transformations, in the order they were queued
+	 *
+	 * @throws IOException if the file can't be read or written
+	 */
+	
+	private static void stream (Path file, List<WriteQueue.Pending> batch) throws IOException {
+		if (!Files.exists(file))
+			return;
+		
+		long size = Files.size(file);
+		Tombstones dead = tombstones(file);
+		SearchIndex search = search(file);
+		FileCache.Entry entry = cached(file);
+		boolean newLine = entry != null ? entry.endsWithNewLine() : index(file).endsWithNewLine();
+		List<String> lines = entry != null || search != null ? new ArrayList<>() : null;
+		List<String> previous = search != null ? new ArrayList<>() : null;
+		LineIndex index = LineIndex.of(new byte[0]);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		int changed = 0;
+		boolean first = true;
+		boolean empty = false;
+		
+		try (FileChannel input = entry != null ? null : FileChannel.open(file, StandardOpenOption.READ);
+		     FileChannel channel = FileChannel.open(temp,
+		                                            StandardOpenOption.CREATE,
+		                                            StandardOpenOption.TRUNCATE_EXISTING,
+		                                            StandardOpenOption.WRITE)) {
+			Iterator<String> source = input != null
+			                          ? Spliterators.iterator(new LineSpliterator(file, input, CHARSET, 0, size))
+			                          : Arrays.asList(entry.lines()).iterator();
+			OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel));
+			
+			while (source.hasNext()) {
+				String line = source.next();
+				
+				if (previous != null)
+					previous.add(line);
+				
+				for (WriteQueue.Pending change : batch)
+					line = change.transform(line);
+				
+				byte[] bytes = (first ? line : "\n" + line).getBytes(CHARSET);
+				first = false;
+				empty = line.isEmpty();
+				outputStream.write(bytes);
+				index.append(bytes, bytes.length);
+				
+				if (lines != null)
+					lines.add(line);
+			}
+			
+			newLine = !first && (newLine || empty);
+			
+			if (newLine) {
+				outputStream.write('\n');
+				index.append(new byte[] {'\n'}, 1);
+			}
+			
+			outputStream.flush();
+			
+			for (WriteQueue.Pending change : batch)
+				changed += change.changed();
+			
+			if (changed > 0 || dead != null)
+				channel.force(true);
+		} catch (UncheckedIOException e) {
+			Files.deleteIfExists(temp);
+			throw e.getCause();
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		
+		if (changed == 0 && dead == null) {
+			Files.deleteIfExists(temp);
+			return;
+		}
+		
+		replace(temp, file);
+		MemoryMetrics.written(file, index.length(), true);
+		
+		if (dead != null)
+			clear(dead);
+		
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		INDEXES.put(file, index.stamp(attributes));
+		
+		if (lines != null)
+			CACHE.put(file, lines.toArray(new String[0]), newLine, attributes.size(),
+			          attributes.lastModifiedTime().toMillis());
+		else
+			CACHE.remove(file);
+		
+		if (search != null)
+			search.update(previous, lines).stamp(attributes);
+	}
+	
+	/**
+	 * Moves a temporary file over a file, atomically if the file system supports it
+	 *
+	 * @param temp The temporary file
+	 * @param file The file to replace
+	 *
+	 * @throws IOException if the file can't be replaced
+	 */
+	
+	private static void replace (Path temp, Path file) throws IOException {
+		try {
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			INDEXES.remove(file);
+			CACHE.remove(file);
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Appends text to the end of a file as new lines and keeps its line index and cached lines current. A file never
+	 * ends with an empty line, as its last line break only ends its last line, so an empty last value is followed by a
+	 * line break of its own.
+	 *
+	 * @param file Path of the file
+	 * @param text The values to append, joined by line breaks
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	
+	private static void extend (Path file, String text) throws IOException {
+		try {
+			boolean exists = Files.exists(file);
+			Tombstones dead = exists ? tombstones(file) : null;
+			SearchIndex search = search(file);
+			LineIndex index = exists ? index(file) : LineIndex.of(new byte[0]);
+			FileCache.Entry entry = exists ? CACHE.get(file) : null;
+			String end = text.isEmpty() || text.endsWith("\n") ? "\n" : "";
+			String appended = (index.endsWithNewLine() ? "" : "\n") + text + end;
+			byte[] bytes = appended.getBytes(CHARSET);
+			
+			try (FileChannel channel = FileChannel.open(file,
+			                                            StandardOpenOption.CREATE,
+			                                            StandardOpenOption.APPEND)) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				
+				channel.force(true);
+			}
+			
+			MemoryMetrics.written(file, bytes.length, false);
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			index.append(bytes, bytes.length);
+			INDEXES.put(file, index.stamp(attributes));
+			CACHE.append(file, entry, appended, attributes.size(), attributes.lastModifiedTime().toMillis());
+			
+			if (dead != null)
+				dead.extend(attributes);
+			
+			if (search != null)
+				search.append(Arrays.asList(FileCache.values(text))).stamp(attributes);
+		} catch (IOException e) {
+			INDEXES.remove(file);
+			CACHE.remove(file);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the amount of lines a file has.
+	 *
+	 * @param path the path of the file.
+	 *
+	 * @return the amount of lines a file has.
+	 *
+	 * @throws IOException if the file doesn't exist.
+	 */
+	
+	public static int countLines (String path) throws IOException {
+		long time = System.nanoTime();
+		Path file = key(path);
+		Lock lock = LOCKS.read(file);
+		lock.lock();
+		
+		try {
+			return countLines(file);
+		} finally {
+			lock.unlock();
+			MemoryMetrics.call("countLines", file, time);
+		}
+	}
+	
+	private static int countLines (Path file) throws IOException {
+		Tombstones dead = tombstones(file);
+		
+		if (isUncachedView(file, dead)) {
+			LineIndex index = index(file);
+			int lines = index.lines() - dead.count();
+			int breaks = lines - (index.endsWithNewLine() ? 0 : 1);
+			return lines <= 0 ? 0 : Math.max(breaks, 1);
+		}
+		
+		if (dead != null) {
+			FileCache.Entry entry = cached(file);
+			int breaks = entry.lines().length - (entry.endsWithNewLine() ? 0 : 1);
+			return entry.lines().length == 0 ? 0 : Math.max(breaks, 1);
+		}
+		
+		MemoryMetrics.read(file, Files.size(file));
+		
+		if (isParallel(file)) {
+			long count = ParallelScanner.count(file, isMapped(file));
+			
+			if (count == 0)
+				return Files.size(file) > 0 ? 1 : 0;
+			
+			return (int) count;
+		}
+		
+		if (isMapped(file)) {
+			long count = LineScanner.countMapped(file);
+			
+			if (count == 0)
+				return Files.size(file) > 0 ? 1 : 0;
+			
+			return (int) count;
+		}
+		
+		try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
 			byte[] c = new byte[1024];
 			
 			int readChars = is.read(c);
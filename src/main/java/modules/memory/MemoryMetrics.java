@@ -0,0 +1,311 @@
+package modules.memory;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the operational metrics of Memory: how often each method is called and how long it takes, and how many
+ * bytes each file had read and written and how many times it was rewritten as a whole.
+ * Metrics are kept in striped counters and fixed histograms, so recording them doesn't contend between threads or
+ * allocate on the hot path. Latencies are kept per method over all files, and per method for each file.
+ */
+
+@SuppressWarnings("unused")
+public final class MemoryMetrics {
+	
+	private static final Logger logger = LoggerFactory.getLogger(MemoryMetrics.class);
+	private static final Map<String, Timer> METHODS = new ConcurrentHashMap<>();
+	private static final Map<Path, FileMetrics> FILES = new ConcurrentHashMap<>();
+	private static final ScheduledExecutorService SCHEDULER = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "memory-metrics");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final int SUMMARY_FILES = 5;
+	private static ScheduledFuture<?> summary;
+	
+	private MemoryMetrics () {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * @return The latencies of every called method over all files, by method name
+	 */
+	
+	@NotNull
+	public static Map<String, Timer> methods () {
+		return Collections.unmodifiableMap(METHODS);
+	}
+	
+	/**
+	 * @return The metrics of every file Memory worked on, by canonical path
+	 */
+	
+	@NotNull
+	public static Map<Path, FileMetrics> files () {
+		return Collections.unmodifiableMap(FILES);
+	}
+	
+	/**
+	 * Returns the metrics of a file
+	 *
+	 * @param path Path of the file
+	 *
+	 * @return The metrics of the file, or null if Memory didn't work on it yet
+	 */
+	
+	public static FileMetrics file (String path) {
+		return FILES.get(Memory.key(path));
+	}
+	
+	/**
+	 * Forgets every recorded metric
+	 */
+	
+	public static void reset () {
+		METHODS.clear();
+		FILES.clear();
+	}
+	
+	/**
+	 * Logs a summary of the metrics periodically: the latencies of every method, and the files that moved the most
+	 * bytes. A period of 0 stops the summary.
+	 *
+	 * @param period The period between summaries
+	 * @param unit   The unit of the period
+	 */
+	
+	public static synchronized void logEvery (long period, TimeUnit unit) {
+		if (summary != null)
+			summary.cancel(false);
+		
+		summary = period > 0 ? SCHEDULER.scheduleAtFixedRate(() -> logger.info(summary()), period, period, unit) : null;
+	}
+	
+	/**
+	 * @return A human readable summary of the metrics
+	 */
+	
+	@NotNull
+	public static String summary () {
+		StringBuilder res = new StringBuilder("Memory metrics");
+		
+		for (Map.Entry<String, Timer> method : new TreeMap<>(METHODS).entrySet())
+			res.append("\n  ").append(method.getKey()).append(": ").append(method.getValue());
+		
+		List<Map.Entry<Path, FileMetrics>> files = new ArrayList<>(FILES.entrySet());
+		files.sort(Comparator.comparingLong((Map.Entry<Path, FileMetrics> file) -> file.getValue().bytesMoved())
+		                     .reversed());
+		
+		for (Map.Entry<Path, FileMetrics> file : files.subList(0, Math.min(SUMMARY_FILES, files.size())))
+			res.append("\n  ").append(file.getKey()).append(": ").append(file.getValue());
+		
+		return res.toString();
+	}
+	
+	/**
+	 * Records a call of a method on a file
+	 *
+	 * @param method Name of the method
+	 * @param file   Canonical path of the file
+	 * @param start  {@link System#nanoTime()} at the start of the call
+	 */
+	
+	static void call (String method, Path file, long start) {
+		long nanos = System.nanoTime() - start;
+		METHODS.computeIfAbsent(method, key -> new Timer()).record(nanos);
+		file(file).methods.computeIfAbsent(method, key -> new Timer()).record(nanos);
+	}
+	
+	/**
+	 * Records bytes read from a file
+	 *
+	 * @param file  Canonical path of the file
+	 * @param bytes The amount of bytes
+	 */
+	
+	static void read (Path file, long bytes) {
+		file(file).read.add(bytes);
+	}
+	
+	/**
+	 * Records bytes written to a file
+	 *
+	 * @param file    Canonical path of the file
+	 * @param bytes   The amount of bytes
+	 * @param rewrite Was the file written as a whole
+	 */
+	
+	static void written (Path file, long bytes, boolean rewrite) {
+		FileMetrics metrics = file(file);
+		metrics.written.add(bytes);
+		
+		if (rewrite)
+			metrics.rewrites.increment();
+	}
+	
+	private static FileMetrics file (Path file) {
+		return FILES.computeIfAbsent(file, key -> new FileMetrics());
+	}
+	
+	/**
+	 * Metrics of a single file
+	 */
+	
+	public static final class FileMetrics {
+		
+		private final LongAdder read = new LongAdder();
+		private final LongAdder written = new LongAdder();
+		private final LongAdder rewrites = new LongAdder();
+		private final Map<String, Timer> methods = new ConcurrentHashMap<>();
+		
+		private FileMetrics () {
+		}
+		
+		/**
+		 * @return The amount of bytes read from the file
+		 */
+		
+		public long bytesRead () {
+			return read.sum();
+		}
+		
+		/**
+		 * @return The amount of bytes written to the file
+		 */
+		
+		public long bytesWritten () {
+			return written.sum();
+		}
+		
+		/**
+		 * @return The amount of bytes read from and written to the file
+		 */
+		
+		public long bytesMoved () {
+			return bytesRead() + bytesWritten();
+		}
+		
+		/**
+		 * @return The amount of times the file was written as a whole
+		 */
+		
+		public long rewrites () {
+			return rewrites.sum();
+		}
+		
+		/**
+		 * @return The latencies of the methods called on the file, by method name
+		 */
+		
+		@NotNull
+		public Map<String, Timer> methods () {
+			return Collections.unmodifiableMap(methods);
+		}
+		
+		@Override
+		public String toString () {
+			return bytesRead() + " bytes read, " + bytesWritten() + " bytes written, " + rewrites() + " rewrites, " +
+			       methods.values().stream().mapToLong(Timer::count).sum() + " calls";
+		}
+	}
+	
+	/**
+	 * Call count and latency histogram of a method. Latencies fall into power of two buckets of nanoseconds, so
+	 * percentiles are accurate to within a factor of two.
+	 */
+	
+	public static final class Timer {
+		
+		private static final int BUCKETS = 64;
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+		
+		private Timer () {
+		}
+		
+		private void record (long nanos) {
+			buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+			count.increment();
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+		
+		/**
+		 * @return The amount of calls
+		 */
+		
+		public long count () {
+			return count.sum();
+		}
+		
+		/**
+		 * @return The mean latency in nanoseconds
+		 */
+		
+		public long mean () {
+			long count = count();
+			return count == 0 ? 0 : total.sum() / count;
+		}
+		
+		/**
+		 * @return The highest latency in nanoseconds
+		 */
+		
+		public long max () {
+			return max.get();
+		}
+		
+		/**
+		 * Returns an upper bound of a latency percentile
+		 *
+		 * @param percentile The percentile, between 0 and 1
+		 *
+		 * @return The latency in nanoseconds that at least that share of the calls didn't exceed
+		 */
+		
+		public long percentile (double percentile) {
+			long count = 0;
+			
+			for (int i = 0; i < BUCKETS; i++)
+				count += buckets.get(i);
+			
+			long target = (long) Math.ceil(percentile * count);
+			long seen = 0;
+			
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				
+				if (seen >= target && seen > 0)
+					return Math.min(i >= 62 ? Long.MAX_VALUE : (2L << i) - 1, max());
+			}
+			
+			return 0;
+		}
+		
+		@Override
+		public String toString () {
+			return count() + " calls, mean " + micros(mean()) + ", p50 " + micros(percentile(0.5)) + ", p99 " +
+			       micros(percentile(0.99)) + ", max " + micros(max());
+		}
+		
+		private static String micros (long nanos) {
+			return nanos / 1000 + "us";
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Scans large files on several cores. The file is split into segments at line breaks, each segment is scanned by
+ * LineScanner on a fork-join pool with its own part, and the parts are merged back in file order, renumbering the
+ * lines of each segment after the lines of the segments before it.
+ */
+
+final class ParallelScanner {
+	
+	static final long DEFAULT_THRESHOLD = 64L * 1024 * 1024;
+	
+	private static final long SEGMENT_SIZE = 8L * 1024 * 1024;
+	private static final int PROBE_SIZE = 4 * 1024;
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("memory-scanner-" + thread.getPoolIndex());
+		thread.setDaemon(true);
+		return thread;
+	}, null, false);
+	
+	private ParallelScanner () {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Scans the lines of a file in parallel segments
+	 *
+	 * @param file   Path of the file
+	 * @param mapped Should the segments be memory mapped, or read through buffers
+	 * @param parts  Creates the part that scans a single segment
+	 * @param <P>    Type of the parts
+	 *
+	 * @return The parts of all the segments, merged in file order
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static <P extends Part<P>> P scan (Path file, boolean mapped, Supplier<P> parts) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return scan(channel, mapped, parts);
+		}
+	}
+	
+	/**
+	 * Counts the line breaks of a file in parallel segments
+	 *
+	 * @param file   Path of the file
+	 * @param mapped Should the segments be memory mapped, or read through buffers
+	 *
+	 * @return The amount of line breaks in the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static long count (Path file, boolean mapped) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long lines = scan(channel, mapped, Count::new).count();
+			ByteBuffer last = ByteBuffer.allocate(1);
+			
+			if (channel.size() > 0 && channel.read(last, channel.size() - 1) == 1 && last.get(0) != '\n')
+				lines--;
+			
+			return lines;
+		}
+	}
+	
+	/**
+	 * Finds the lines of a file that match in parallel segments
+	 *
+	 * @param file     Path of the file
+	 * @param mapped   Should the segments be memory mapped, or read through buffers
+	 * @param matchers Creates the matcher of a single segment
+	 * @param limit    The maximal amount of lines to return
+	 * @param last     Should the last matching lines be returned instead of the first ones
+	 *
+	 * @return The part holding the numbers of the matching lines
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static Found find (Path file, boolean mapped, Supplier<LineMatcher> matchers, int limit, boolean last)
+			throws IOException {
+		return scan(file, mapped, () -> new Found(matchers.get(), limit, last));
+	}
+	
+	/**
+	 * Matches the lines of a file against a set of keywords in parallel segments
+	 *
+	 * @param file     Path of the file
+	 * @param mapped   Should the segments be memory mapped, or read through buffers
+	 * @param keywords The compiled keywords
+	 * @param limit    The amount of matching lines after which the scan can stop
+	 *
+	 * @return The part holding the matches of the keywords
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	static Matched match (Path file, boolean mapped, KeywordSet keywords, int limit) throws IOException {
+		return scan(file, mapped, () -> new Matched(keywords, limit));
+	}
+	
+	private static <P extends Part<P>> P scan (FileChannel channel, boolean mapped, Supplier<P> parts)
+			throws IOException {
+		try {
+			return POOL.invoke(new Segment<>(channel, 0, channel.size(), mapped, parts));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Finds the offset right after the first line break at or after an offset
+	 *
+	 * @param channel Channel of the file
+	 * @param from    The offset to start from
+	 * @param to      The offset to stop at
+	 *
+	 * @return The offset of the start of the next line, or -1 if there is no line break before to
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	
+	private static long align (FileChannel channel, long from, long to) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(PROBE_SIZE);
+		
+		for (long position = from; position < to; position += buffer.limit()) {
+			buffer.clear();
+			buffer.limit((int) Math.min(PROBE_SIZE, to - position));
+			
+			if (channel.read(buffer, position) <= 0)
+				return -1;
+			
+			buffer.flip();
+			
+			for (int i = 0; i < buffer.limit(); i++) {
+				if (buffer.get(i) == '\n')
+					return position + i + 1 < to ? position + i + 1 : -1;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Matches a single line on its raw bytes
+	 */
+	
+	interface LineMatcher {
+		
+		/**
+		 * @param buffer The buffer holding the line
+		 * @param from   Offset of the first byte of the line in the buffer
+		 * @param to     Offset right after the last byte of the line, excluding its line break
+		 *
+		 * @return True if the line matches
+		 */
+		
+		boolean matches (ByteBuffer buffer, int from, int to);
+	}
+	
+	/**
+	 * The result of scanning a single segment, which can be merged with the result of the segment after it
+	 *
+	 * @param <P> Type of the part
+	 */
+	
+	abstract static class Part<P extends Part<P>> implements LineScanner.Visitor {
+		
+		private long count;
+		private long read;
+		private boolean stopped;
+		
+		@Override
+		public final boolean visit (ByteBuffer buffer, int from, int to, long line) {
+			count   = line;
+			stopped = !accept(buffer, from, to, line);
+			return !stopped;
+		}
+		
+		/**
+		 * @return The amount of lines of the merged segments
+		 */
+		
+		final long count () {
+			return count;
+		}
+		
+		/**
+		 * @return The amount of bytes read by the scans of the merged segments
+		 */
+		
+		final long read () {
+			return read;
+		}
+		
+		/**
+		 * Receives a line of the segment
+		 *
+		 * @param buffer The buffer holding the line
+		 * @param from   Offset of the first byte of the line in the buffer
+		 * @param to     Offset right after the last byte of the line, excluding its line break
+		 * @param line   Number of the line in the segment, starting from 1
+		 *
+		 * @return True to continue to the next line, false to stop the scan of the segment
+		 */
+		
+		abstract boolean accept (ByteBuffer buffer, int from, int to, long line);
+		
+		/**
+		 * Adds the result of the segment right after this one
+		 *
+		 * @param next   The part of the next segment
+		 * @param offset The amount of lines before the next segment, to add to its line numbers
+		 */
+		
+		abstract void append (P next, long offset);
+		
+		private void merge (Part<P> next) {
+			read += next.read;
+			
+			if (stopped)
+				return;
+			
+			append(next.self(), count);
+			count   += next.count;
+			stopped = next.stopped;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private P self () {
+			return (P) this;
+		}
+	}
+	
+	/**
+	 * Numbers of the first or last matching lines
+	 */
+	
+	static final class Found extends Part<Found> {
+		
+		private final LineMatcher matcher;
+		private final int limit;
+		private final boolean last;
+		private long[] lines = new long[8];
+		private int size;
+		
+		private Found (LineMatcher matcher, int limit, boolean last) {
+			this.matcher = matcher;
+			this.limit   = limit;
+			this.last    = last;
+		}
+		
+		/**
+		 * @return The numbers of the matching lines, in ascending order
+		 */
+		
+		long[] lines () {
+			return Arrays.copyOf(lines, size);
+		}
+		
+		@Override
+		boolean accept (ByteBuffer buffer, int from, int to, long line) {
+			if (matcher.matches(buffer, from, to))
+				add(line);
+			
+			return last || size < limit;
+		}
+		
+		@Override
+		void append (Found next, long offset) {
+			for (int i = 0; i < next.size && (last || size < limit); i++)
+				add(next.lines[i] + offset);
+		}
+		
+		private void add (long line) {
+			if (last && size == limit && size > 0) {
+				System.arraycopy(lines, 1, lines, 0, size - 1);
+				size--;
+			}
+			
+			if (size == lines.length)
+				lines = Arrays.copyOf(lines, size * 2);
+			
+			lines[size++] = line;
+		}
+	}
+	
+	/**
+	 * Lines matched by each keyword of a set
+	 */
+	
+	static final class Matched extends Part<Matched> {
+		
+		private final KeywordSet keywords;
+		private final KeywordSet.Matches matches;
+		
+		private Matched (KeywordSet keywords, int limit) {
+			this.keywords = keywords;
+			this.matches  = keywords.matches(limit);
+		}
+		
+		/**
+		 * @return The matches of the keywords
+		 */
+		
+		KeywordSet.Matches matches () {
+			return matches;
+		}
+		
+		@Override
+		boolean accept (ByteBuffer buffer, int from, int to, long line) {
+			keywords.match(buffer, from, to, line, matches);
+			return !matches.isDone();
+		}
+		
+		@Override
+		void append (Matched next, long offset) {
+			matches.append(next.matches, offset);
+		}
+	}
+	
+	/**
+	 * Amount of lines
+	 */
+	
+	private static final class Count extends Part<Count> {
+		
+		@Override
+		boolean accept (ByteBuffer buffer, int from, int to, long line) {
+			return true;
+		}
+		
+		@Override
+		void append (Count next, long offset) {
+		}
+	}
+	
+	/**
+	 * Scans a range of the file, splitting it at a line break near its middle while it is larger than a segment
+	 */
+	
+	private static final class Segment<P extends Part<P>> extends RecursiveTask<P> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final FileChannel channel;
+		private final long from;
+		private final long to;
+		private final boolean mapped;
+		private final Supplier<P> parts;
+		
+		private Segment (FileChannel channel, long from, long to, boolean mapped, Supplier<P> parts) {
+			this.channel = channel;
+			this.from    = from;
+			this.to      = to;
+			this.mapped  = mapped;
+			this.parts   = parts;
+		}
+		
+		@Override
+		protected P compute () {
+			try {
+				long split = to - from > SEGMENT_SIZE ? align(channel, from + (to - from) / 2, to) : -1;
+				
+				if (split == -1) {
+					P part = parts.get();
+					((Part<P>) part).read = LineScanner.scan(channel, from, to, mapped, part);
+					return part;
+				}
+				
+				Segment<P> next = new Segment<>(channel, split, to, mapped, parts);
+				next.fork();
+				P part = new Segment<>(channel, from, split, mapped, parts).compute();
+				((Part<P>) part).merge(next.join());
+				return part;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read/write locks of the files managed by Memory, one per canonical path.
+ * Readers of a file proceed in parallel, a writer of a file excludes its readers and other writers, and locks of
+ * different files never block each other.
+ */
+
+final class PathLocks {
+	
+	private final Map<String, Path> keys = new ConcurrentHashMap<>();
+	private final Map<Path, ReadWriteLock> locks = new ConcurrentHashMap<>();
+	
+	/**
+	 * Returns the canonical path of a file, so every spelling of the same file shares its lock, cache and indexes.
+	 * Symbolic links are resolved, and a file that doesn't exist yet is resolved through its directory.
+	 *
+	 * @param path Path of the file
+	 *
+	 * @return The canonical path of the file
+	 */
+	
+	Path key (String path) {
+		return keys.computeIfAbsent(path, PathLocks::canonical);
+	}
+	
+	/**
+	 * @param file Canonical path of the file
+	 *
+	 * @return The lock of the readers of the file
+	 */
+	
+	Lock read (Path file) {
+		return lock(file).readLock();
+	}
+	
+	/**
+	 * @param file Canonical path of the file
+	 *
+	 * @return The lock of the writers of the file
+	 */
+	
+	Lock write (Path file) {
+		return lock(file).writeLock();
+	}
+	
+	private ReadWriteLock lock (Path file) {
+		return locks.computeIfAbsent(file, key -> new ReentrantReadWriteLock());
+	}
+	
+	private static Path canonical (String path) {
+		Path file = Paths.get(path).toAbsolutePath().normalize();
+		
+		try {
+			return Files.exists(file) ? file.toRealPath() : file.getParent().toRealPath().resolve(file.getFileName());
+		} catch (IOException e) {
+			return file;
+		}
+	}
+}
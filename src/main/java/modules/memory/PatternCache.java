@@ -0,0 +1,76 @@
+package modules.memory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded cache of compiled regular expressions, so patterns used over and over by Memory are compiled once.
+ * The least recently used patterns are evicted first.
+ */
+
+final class PatternCache {
+	
+	static final int DEFAULT_CAPACITY = 256;
+	
+	private final Map<Key, Pattern> patterns = new LinkedHashMap<Key, Pattern>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<Key, Pattern> eldest) {
+			return size() > capacity;
+		}
+	};
+	private int capacity = DEFAULT_CAPACITY;
+	
+	/**
+	 * Returns a compiled pattern, compiling it if it isn't cached
+	 *
+	 * @param regex The regular expression
+	 * @param flags The match flags of {@link Pattern}
+	 *
+	 * @return The compiled pattern
+	 *
+	 * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+	 */
+	
+	synchronized Pattern get (String regex, int flags) {
+		return patterns.computeIfAbsent(new Key(regex, flags), key -> Pattern.compile(regex, flags));
+	}
+	
+	/**
+	 * Sets how many patterns are kept, evicting the least recently used ones if there are more
+	 *
+	 * @param capacity The amount of patterns
+	 */
+	
+	synchronized void setCapacity (int capacity) {
+		this.capacity = Math.max(0, capacity);
+		patterns.keySet().removeIf(key -> patterns.size() > this.capacity);
+	}
+	
+	private static final class Key {
+		
+		private final String regex;
+		private final int flags;
+		
+		private Key (String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+		}
+		
+		@Override
+		public boolean equals (Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			
+			Key key = (Key) o;
+			return flags == key.flags && regex.equals(key.regex);
+		}
+		
+		@Override
+		public int hashCode () {
+			return 31 * regex.hashCode() + flags;
+		}
+	}
+}
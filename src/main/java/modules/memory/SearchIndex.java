@@ -0,0 +1,444 @@
+package modules.memory;
+
+import modules.util.LongMap;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search index of a single file: an exact index from the hash of each case-folded line to the lines holding it, and a
+ * trigram index from each case-folded trigram to the lines containing it. The index keeps line numbers only: candidates
+ * from the postings are read back through the cache or the line offsets of the file and verified against the keyword,
+ * so the index answers exactly what a scan of the file would. Lines are folded with {@link Keyword#fold(String)}, as
+ * the keyword verifies them, and a part of a line folds to a part of the folded line, so no match is left out.
+ * The postings are saved next to the file, and loaded again as long as the file hasn't changed since.
+ */
+
+final class SearchIndex {
+	
+	private static final int MAGIC = 0x43534958;
+	private static final int VERSION = 2;
+	private static final int GRAM = 3;
+	
+	private final LongMap<Postings> exact = new LongMap<>();
+	private final LongMap<Postings> trigrams = new LongMap<>();
+	private int lines;
+	private long size = -1;
+	private long modified = -1;
+	private boolean dirty;
+	
+	/**
+	 * Builds the index of lines
+	 *
+	 * @param lines The lines of the file
+	 *
+	 * @return The index of the lines
+	 */
+	
+	static SearchIndex of (String[] lines) {
+		SearchIndex index = new SearchIndex();
+		index.append(Arrays.asList(lines));
+		return index;
+	}
+	
+	/**
+	 * Loads the saved index of a file
+	 *
+	 * @param file Path of the indexed file
+	 *
+	 * @return The saved index, or null if there is none or the file changed since it was saved
+	 */
+	
+	static SearchIndex load (Path file) {
+		Path saved = sidecar(file);
+		
+		if (!Files.exists(saved))
+			return null;
+		
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(saved)))) {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != attributes.size() ||
+			    in.readLong() != attributes.lastModifiedTime().toMillis())
+				return null;
+			
+			SearchIndex index = new SearchIndex();
+			index.lines = in.readInt();
+			read(in, index.exact);
+			read(in, index.trigrams);
+			return index.stamp(attributes);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Saves the index next to the file
+	 *
+	 * @param file Path of the indexed file
+	 *
+	 * @throws IOException if the index can't be written
+	 */
+	
+	synchronized void save (Path file) throws IOException {
+		Path saved = sidecar(file);
+		Path temp = saved.resolveSibling(saved.getFileName() + ".tmp");
+		
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeInt(lines);
+			write(out, exact);
+			write(out, trigrams);
+		}
+		
+		Files.move(temp, saved, StandardCopyOption.REPLACE_EXISTING);
+		dirty = false;
+	}
+	
+	private static void read (DataInputStream in, LongMap<Postings> map) throws IOException {
+		int keys = in.readInt();
+		
+		for (int i = 0; i < keys; i++) {
+			long key = in.readLong();
+			Postings postings = new Postings();
+			int length = in.readInt();
+			
+			for (int j = 0; j < length; j++)
+				postings.add(in.readInt());
+			
+			map.put(key, postings);
+		}
+	}
+	
+	private static void write (DataOutputStream out, LongMap<Postings> map) throws IOException {
+		out.writeInt(map.size());
+		
+		for (long key : map.keys()) {
+			Postings postings = map.get(key);
+			out.writeLong(key);
+			out.writeInt(postings.size);
+			
+			for (int i = 0; i < postings.size; i++)
+				out.writeInt(postings.lines[i]);
+		}
+	}
+	
+	/**
+	 * Deletes the saved index of a file
+	 *
+	 * @param file Path of the indexed file
+	 *
+	 * @throws IOException if the saved index can't be deleted
+	 */
+	
+	static void delete (Path file) throws IOException {
+		Files.deleteIfExists(sidecar(file));
+	}
+	
+	private static Path sidecar (Path file) {
+		return file.resolveSibling(file.getFileName() + ".idx");
+	}
+	
+	/**
+	 * Records the size and modification time of the file, so changes made outside of Memory can be detected
+	 *
+	 * @param attributes Attributes of the indexed file
+	 *
+	 * @return This index
+	 */
+	
+	synchronized SearchIndex stamp (BasicFileAttributes attributes) {
+		size     = attributes.size();
+		modified = attributes.lastModifiedTime().toMillis();
+		return this;
+	}
+	
+	/**
+	 * @param attributes Attributes of the indexed file
+	 *
+	 * @return True if the index still describes the file
+	 */
+	
+	synchronized boolean isCurrent (BasicFileAttributes attributes) {
+		return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+	}
+	
+	/**
+	 * @return True if the index changed since it was last saved
+	 */
+	
+	synchronized boolean isDirty () {
+		return dirty;
+	}
+	
+	/**
+	 * @return The amount of indexed lines
+	 */
+	
+	synchronized int lines () {
+		return lines;
+	}
+	
+	/**
+	 * Indexes lines appended to the end of the file
+	 *
+	 * @param appended The appended lines
+	 *
+	 * @return This index
+	 */
+	
+	synchronized SearchIndex append (List<String> appended) {
+		for (String line : appended)
+			add(lines++, line);
+		
+		dirty = true;
+		return this;
+	}
+	
+	/**
+	 * Brings the index up to date with the new lines of the file. Lines that changed in place are indexed again one
+	 * by one, and the whole index is built again if lines were inserted or removed.
+	 *
+	 * @param previous The lines of the file before the change
+	 * @param current  The new lines of the file
+	 *
+	 * @return This index
+	 */
+	
+	synchronized SearchIndex update (List<String> previous, List<String> current) {
+		if (previous.size() != lines || current.size() != lines) {
+			lines = 0;
+			exact.clear();
+			trigrams.clear();
+			return append(current);
+		}
+		
+		for (int i = 0; i < current.size(); i++) {
+			if (!current.get(i).equals(previous.get(i))) {
+				remove(i, previous.get(i));
+				add(i, current.get(i));
+			}
+		}
+		
+		dirty = true;
+		return this;
+	}
+	
+	/**
+	 * Finds the lines matching a keyword
+	 *
+	 * @param keyword The keyword to match
+	 * @param start   Index of the line to start from, starting from 0
+	 * @param limit   The maximal amount of lines to return
+	 * @param last    Should the lines be collected from the end of the file instead of from the start
+	 * @param text    Reads the candidate lines
+	 *
+	 * @return The indexes of the matching lines, in file order, starting from 0, or null if the keyword is too short
+	 * to be looked up, so the file has to be scanned
+	 *
+	 * @throws IOException if a candidate line can't be read
+	 */
+	
+	synchronized int[] find (Keyword keyword, int start, int limit, boolean last, Lines text) throws IOException {
+		String folded = Keyword.fold(keyword.keyword());
+		
+		if (!keyword.isWholeLine() && folded.length() < GRAM)
+			return null;
+		
+		Postings candidates = keyword.isWholeLine() ? exact.get(hash(folded)) : intersect(folded);
+		
+		if (candidates == null)
+			return new int[0];
+		
+		int[] res = new int[Math.min(limit, candidates.size)];
+		int found = 0;
+		
+		for (int k = 0; k < candidates.size && found < limit; k++) {
+			int line = candidates.lines[last ? candidates.size - 1 - k : k];
+			
+			if (line >= start && keyword.test(text.get(line)))
+				res[found++] = line;
+		}
+		
+		res = Arrays.copyOf(res, found);
+		
+		if (last) {
+			for (int i = 0; i < found / 2; i++) {
+				int swap = res[i];
+				res[i]             = res[found - 1 - i];
+				res[found - 1 - i] = swap;
+			}
+		}
+		
+		return res;
+	}
+	
+	private Postings intersect (String folded) {
+		long[] grams = grams(folded);
+		Postings smallest = null;
+		
+		for (long gram : grams) {
+			Postings postings = trigrams.get(gram);
+			
+			if (postings == null)
+				return null;
+			
+			if (smallest == null || postings.size < smallest.size)
+				smallest = postings;
+		}
+		
+		Postings res = new Postings();
+		
+		for (int i = 0; smallest != null && i < smallest.size; i++) {
+			int line = smallest.lines[i];
+			boolean all = true;
+			
+			for (long gram : grams)
+				all &= trigrams.get(gram).contains(line);
+			
+			if (all)
+				res.add(line);
+		}
+		
+		return res;
+	}
+	
+	private void add (int index, String line) {
+		String folded = Keyword.fold(line);
+		insert(exact, hash(folded), index);
+		
+		for (long gram : grams(folded))
+			insert(trigrams, gram, index);
+	}
+	
+	private void remove (int index, String line) {
+		String folded = Keyword.fold(line);
+		remove(exact, hash(folded), index);
+		
+		for (long gram : grams(folded))
+			remove(trigrams, gram, index);
+	}
+	
+	private static void insert (LongMap<Postings> map, long key, int index) {
+		Postings postings = map.get(key);
+		
+		if (postings == null) {
+			postings = new Postings();
+			map.put(key, postings);
+		}
+		
+		postings.insert(index);
+	}
+	
+	private static void remove (LongMap<Postings> map, long key, int index) {
+		Postings postings = map.get(key);
+		
+		if (postings != null && postings.remove(index) && postings.size == 0)
+			map.remove(key);
+	}
+	
+	/**
+	 * Hashes a folded line with 64 bits FNV-1a, so equal lines share their key and other lines rarely do
+	 *
+	 * @param folded The folded line
+	 *
+	 * @return The hash of the line
+	 */
+	
+	private static long hash (String folded) {
+		long hash = 0xcbf29ce484222325L;
+		
+		for (int i = 0; i < folded.length(); i++) {
+			hash ^= folded.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		
+		return hash;
+	}
+	
+	private static long[] grams (String folded) {
+		long[] res = new long[Math.max(0, folded.length() - GRAM + 1)];
+		
+		for (int i = 0; i < res.length; i++)
+			res[i] = (long) folded.charAt(i) << 32 | (long) folded.charAt(i + 1) << 16 | folded.charAt(i + 2);
+		
+		return res;
+	}
+	
+	/**
+	 * Reads lines of the indexed file
+	 */
+	
+	@FunctionalInterface
+	interface Lines {
+		
+		/**
+		 * @param line Index of the line, starting from 0
+		 *
+		 * @return The line, without its line break
+		 *
+		 * @throws IOException if the line can't be read
+		 */
+		
+		String get (int line) throws IOException;
+	}
+	
+	/**
+	 * Sorted line indexes of a posting list
+	 */
+	
+	private static final class Postings {
+		
+		private int[] lines = new int[4];
+		private int size;
+		
+		void add (int line) {
+			if (size > 0 && lines[size - 1] == line)
+				return;
+			
+			if (size == lines.length)
+				lines = Arrays.copyOf(lines, size * 2);
+			
+			lines[size++] = line;
+		}
+		
+		void insert (int line) {
+			int at = Arrays.binarySearch(lines, 0, size, line);
+			
+			if (at >= 0)
+				return;
+			
+			at = -at - 1;
+			
+			if (size == lines.length)
+				lines = Arrays.copyOf(lines, size * 2);
+			
+			System.arraycopy(lines, at, lines, at + 1, size - at);
+			lines[at] = line;
+			size++;
+		}
+		
+		boolean remove (int line) {
+			int at = Arrays.binarySearch(lines, 0, size, line);
+			
+			if (at < 0)
+				return false;
+			
+			System.arraycopy(lines, at + 1, lines, at, size - at - 1);
+			size--;
+			return true;
+		}
+		
+		boolean contains (int line) {
+			return Arrays.binarySearch(lines, 0, size, line) >= 0;
+		}
+	}
+}
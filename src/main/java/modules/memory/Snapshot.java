@@ -0,0 +1,209 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the lines of a file, saved next to the file.
+ * The snapshot holds the size and modification time of the file it was taken from, the byte offset of every line and
+ * the encoded lines themselves, followed by a checksum of everything before it. A loaded snapshot is memory mapped
+ * and its lines are decoded only when they are read.
+ */
+
+final class Snapshot {
+	
+	private static final int MAGIC = 0x43534e50;
+	private static final int VERSION = 1;
+	private static final int HEADER = Integer.BYTES * 2 + Long.BYTES * 2 + Integer.BYTES;
+	
+	private Snapshot () {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Saves a snapshot of the lines of a file
+	 *
+	 * @param file       Path of the file
+	 * @param attributes Attributes of the file the lines were read from
+	 * @param lines      The lines of the file
+	 * @param charset    The charset to encode the lines with
+	 *
+	 * @throws IOException if the snapshot can't be written
+	 */
+	
+	static void save (Path file, BasicFileAttributes attributes, List<String> lines, Charset charset)
+			throws IOException {
+		byte[][] encoded = new byte[lines.size()][];
+		long length = 0;
+		
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = lines.get(i).getBytes(charset);
+			length += encoded[i].length;
+		}
+		
+		long size = HEADER + Integer.BYTES * (encoded.length + 1L) + length + Long.BYTES;
+		
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("File is too large for a snapshot: " + file);
+		
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(MAGIC)
+		      .putInt(VERSION)
+		      .putLong(attributes.size())
+		      .putLong(attributes.lastModifiedTime().toMillis())
+		      .putInt(encoded.length);
+		
+		int offset = 0;
+		
+		for (byte[] line : encoded) {
+			buffer.putInt(offset);
+			offset += line.length;
+		}
+		
+		buffer.putInt(offset);
+		
+		for (byte[] line : encoded)
+			buffer.put(line);
+		
+		buffer.putLong(checksum(buffer, buffer.position()));
+		buffer.flip();
+		
+		Path saved = sidecar(file);
+		Path temp = saved.resolveSibling(saved.getFileName() + ".tmp");
+		
+		try (FileChannel channel = FileChannel.open(temp,
+		                                            StandardOpenOption.CREATE,
+		                                            StandardOpenOption.TRUNCATE_EXISTING,
+		                                            StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			
+			channel.force(true);
+		}
+		
+		try {
+			Files.move(temp, saved, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, saved, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Loads the snapshot of a file
+	 *
+	 * @param file       Path of the file
+	 * @param attributes Current attributes of the file
+	 * @param charset    The charset the lines were encoded with
+	 *
+	 * @return The lines of the file, decoded as they are read, or null if there is no intact snapshot of the file as
+	 * it is now
+	 */
+	
+	static List<String> load (Path file, BasicFileAttributes attributes, Charset charset) {
+		Path saved = sidecar(file);
+		
+		if (!Files.exists(saved))
+			return null;
+		
+		try (FileChannel channel = FileChannel.open(saved, StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			if (size < HEADER + Integer.BYTES + Long.BYTES || size > Integer.MAX_VALUE)
+				return null;
+			
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION ||
+			    buffer.getLong(Integer.BYTES * 2) != attributes.size() ||
+			    buffer.getLong(Integer.BYTES * 2 + Long.BYTES) != attributes.lastModifiedTime().toMillis())
+				return null;
+			
+			int count = buffer.getInt(HEADER - Integer.BYTES);
+			long blob = HEADER + Integer.BYTES * (count + 1L);
+			
+			if (count < 0 || blob + Long.BYTES > size ||
+			    blob + buffer.getInt((int) blob - Integer.BYTES) + Long.BYTES != size ||
+			    buffer.getLong((int) size - Long.BYTES) != checksum(buffer, (int) size - Long.BYTES))
+				return null;
+			
+			return new Lines(buffer, count, (int) blob, charset);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Deletes the snapshot of a file
+	 *
+	 * @param file Path of the file
+	 *
+	 * @throws IOException if the snapshot can't be deleted
+	 */
+	
+	static void delete (Path file) throws IOException {
+		Files.deleteIfExists(sidecar(file));
+	}
+	
+	private static Path sidecar (Path file) {
+		return file.resolveSibling(file.getFileName() + ".snap");
+	}
+	
+	private static long checksum (ByteBuffer buffer, int length) {
+		ByteBuffer content = buffer.duplicate();
+		content.position(0).limit(length);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+	
+	/**
+	 * Lines of a loaded snapshot, decoded from the mapping as they are read
+	 */
+	
+	private static final class Lines extends AbstractList<String> implements RandomAccess {
+		
+		private final ByteBuffer buffer;
+		private final int count;
+		private final int blob;
+		private final Charset charset;
+		
+		private Lines (ByteBuffer buffer, int count, int blob, Charset charset) {
+			this.buffer  = buffer;
+			this.count   = count;
+			this.blob    = blob;
+			this.charset = charset;
+		}
+		
+		@Override
+		public String get (int index) {
+			if (index < 0 || index >= count)
+				throw new IndexOutOfBoundsException("Line " + index + " of " + count);
+			
+			int from = buffer.getInt(HEADER + Integer.BYTES * index);
+			int to = buffer.getInt(HEADER + Integer.BYTES * (index + 1));
+			byte[] line = new byte[to - from];
+			ByteBuffer view = buffer.duplicate();
+			view.position(blob + from);
+			view.get(line);
+			return new String(line, charset);
+		}
+		
+		@Override
+		public int size () {
+			return count;
+		}
+	}
+}
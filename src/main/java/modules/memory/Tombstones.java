@@ -0,0 +1,257 @@
+package modules.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lines of a file that were deleted without rewriting the file, saved next to the file.
+ * The sidecar holds the size and modification time of the file the deletions apply to, followed by the index of each
+ * deleted line in the file, so a deletion appends four bytes instead of rewriting the file. Reads skip the deleted
+ * lines until the file is rewritten without them. The deletions are dropped if the file changes outside of Memory.
+ * Every change of the deletions gets a new version, so a view of the file filtered by them can be cached and checked.
+ */
+
+final class Tombstones {
+	
+	static final double DEFAULT_RATIO = 0.25;
+	
+	private static final int HEADER = Long.BYTES * 2;
+	private static final AtomicLong VERSIONS = new AtomicLong();
+	
+	private final Path sidecar;
+	private final BitSet dead = new BitSet();
+	private long size = -1;
+	private long modified = -1;
+	private long version = VERSIONS.incrementAndGet();
+	private boolean compacting;
+	
+	private Tombstones (Path file) {
+		this.sidecar = file.resolveSibling(file.getFileName() + ".dead");
+	}
+	
+	/**
+	 * Loads the deleted lines of a file. Deletions saved for another version of the file are dropped.
+	 *
+	 * @param file Path of the file
+	 *
+	 * @return The deleted lines of the file, empty if it has none
+	 *
+	 * @throws IOException if the saved deletions can't be read
+	 */
+	
+	static Tombstones load (Path file) throws IOException {
+		Tombstones res = new Tombstones(file);
+		
+		if (!Files.exists(res.sidecar))
+			return res;
+		
+		if (!Files.exists(file)) {
+			res.clear();
+			return res;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(res.sidecar));
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		
+		if (buffer.remaining() < HEADER || buffer.getLong() != attributes.size() ||
+		    buffer.getLong() != attributes.lastModifiedTime().toMillis()) {
+			res.clear();
+			return res;
+		}
+		
+		while (buffer.remaining() >= Integer.BYTES)
+			res.dead.set(buffer.getInt());
+		
+		res.stamp(attributes);
+		return res;
+	}
+	
+	/**
+	 * @return Path of the sidecar holding the deletions
+	 */
+	
+	Path sidecar () {
+		return sidecar;
+	}
+	
+	/**
+	 * @return The version of the deletions, which changes whenever they change and is never reused
+	 */
+	
+	synchronized long version () {
+		return version;
+	}
+	
+	/**
+	 * @return True if no line is deleted
+	 */
+	
+	synchronized boolean isEmpty () {
+		return dead.isEmpty();
+	}
+	
+	/**
+	 * @return The amount of deleted lines
+	 */
+	
+	synchronized int count () {
+		return dead.cardinality();
+	}
+	
+	/**
+	 * Checks if the deletions still apply to a file
+	 *
+	 * @param attributes Current attributes of the file
+	 *
+	 * @return True if the file wasn't changed since the deletions were recorded
+	 */
+	
+	synchronized boolean isCurrent (BasicFileAttributes attributes) {
+		return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+	}
+	
+	/**
+	 * Returns the index of a line in the file, counting deleted lines
+	 *
+	 * @param line Number of the line among the lines that aren't deleted, starting from 1
+	 *
+	 * @return Index of the line in the file, starting from 0
+	 */
+	
+	synchronized int physical (long line) {
+		int res = (int) line - 1;
+		
+		for (int i = dead.nextSetBit(0); i >= 0 && i <= res; i = dead.nextSetBit(i + 1))
+			res++;
+		
+		return res;
+	}
+	
+	/**
+	 * @param index Index of a line in the file, starting from 0
+	 *
+	 * @return True if the line is deleted
+	 */
+	
+	synchronized boolean isDead (int index) {
+		return dead.get(index);
+	}
+	
+	/**
+	 * Deletes a line and saves the deletion
+	 *
+	 * @param index      Index of the line in the file, starting from 0
+	 * @param attributes Current attributes of the file
+	 *
+	 * @throws IOException if the deletion can't be saved
+	 */
+	
+	synchronized void add (int index, BasicFileAttributes attributes) throws IOException {
+		if (dead.get(index))
+			return;
+		
+		boolean fresh = dead.isEmpty() || !Files.exists(sidecar);
+		ByteBuffer buffer = ByteBuffer.allocate((fresh ? HEADER : 0) + Integer.BYTES);
+		
+		if (fresh)
+			buffer.putLong(attributes.size()).putLong(attributes.lastModifiedTime().toMillis());
+		
+		buffer.putInt(index).flip();
+		
+		try (FileChannel channel = fresh
+		                           ? FileChannel.open(sidecar,
+		                                              StandardOpenOption.CREATE,
+		                                              StandardOpenOption.TRUNCATE_EXISTING,
+		                                              StandardOpenOption.WRITE)
+		                           : FileChannel.open(sidecar, StandardOpenOption.APPEND)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			
+			channel.force(false);
+		}
+		
+		dead.set(index);
+		version = VERSIONS.incrementAndGet();
+		stamp(attributes);
+	}
+	
+	/**
+	 * Moves the deletions to a new version of the file that only grew at its end
+	 *
+	 * @param attributes Attributes of the new version of the file
+	 *
+	 * @throws IOException if the deletions can't be saved
+	 */
+	
+	synchronized void extend (BasicFileAttributes attributes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER);
+		buffer.putLong(attributes.size()).putLong(attributes.lastModifiedTime().toMillis()).flip();
+		
+		try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer, buffer.position());
+			
+			channel.force(false);
+		}
+		
+		version = VERSIONS.incrementAndGet();
+		stamp(attributes);
+	}
+	
+	/**
+	 * Forgets every deletion and deletes the sidecar, once the file was rewritten without the deleted lines
+	 *
+	 * @throws IOException if the sidecar can't be deleted
+	 */
+	
+	synchronized void clear () throws IOException {
+		dead.clear();
+		version    = VERSIONS.incrementAndGet();
+		compacting = false;
+		Files.deleteIfExists(sidecar);
+	}
+	
+	/**
+	 * Returns the lines of the file that aren't deleted
+	 *
+	 * @param lines The lines of the file
+	 *
+	 * @return The lines that aren't deleted
+	 */
+	
+	synchronized String[] filter (String[] lines) {
+		String[] live = new String[Math.max(0, lines.length - dead.get(0, lines.length).cardinality())];
+		int size = 0;
+		
+		for (int i = 0; i < lines.length; i++) {
+			if (!dead.get(i))
+				live[size++] = lines[i];
+		}
+		
+		return live;
+	}
+	
+	/**
+	 * Marks the deletions as about to be compacted, so the compaction is requested once
+	 *
+	 * @return True if the compaction wasn't requested yet
+	 */
+	
+	synchronized boolean compact () {
+		boolean res = !compacting;
+		compacting = true;
+		return res;
+	}
+	
+	private void stamp (BasicFileAttributes attributes) {
+		size     = attributes.size();
+		modified = attributes.lastModifiedTime().toMillis();
+	}
+}
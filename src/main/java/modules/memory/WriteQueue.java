@@ -0,0 +1,337 @@
+package modules.memory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Queue of pending mutations of files managed by Memory.
+ * A mutation of a file nothing else is writing to is committed right away. Mutations that arrive while a batch of the
+ * file is being committed are collected and committed together by the next batch, a short window after it, and the
+ * callers are released once the batch containing their mutation is on disk. Batches of the same file never overlap,
+ * and batches of different files are committed by a bounded pool of writers, so they don't wait for each other unless
+ * every writer is busy. A mutation that fails on its own fails only its caller, and the rest of its batch is still
+ * committed. Mutations can't be queued from inside a commit, as the commit would wait for itself.
+ */
+
+final class WriteQueue {
+	
+	static final long DEFAULT_WINDOW = 1;
+	
+	private static final int WRITERS = Runtime.getRuntime().availableProcessors();
+	
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService writers;
+	private final BiConsumer<Path, List<Pending>> committer;
+	private final Map<Path, List<Pending>> pending = new HashMap<>();
+	private final Map<Path, Boolean> scheduled = new HashMap<>();
+	private final ThreadLocal<Path> committing = new ThreadLocal<>();
+	private volatile long window = DEFAULT_WINDOW;
+	
+	/**
+	 * @param committer Applies a batch of mutations to a file and completes them
+	 */
+	
+	WriteQueue (BiConsumer<Path, List<Pending>> committer) {
+		this.committer = committer;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "memory-scheduler"));
+		this.writers   = writers();
+	}
+	
+	private static ExecutorService writers () {
+		ThreadPoolExecutor writers = new ThreadPoolExecutor(WRITERS, WRITERS, 30, TimeUnit.SECONDS,
+		                                                    new LinkedBlockingQueue<>(),
+		                                                    runnable -> daemon(runnable, "memory-writer"));
+		writers.allowCoreThreadTimeOut(true);
+		return writers;
+	}
+	
+	private static Thread daemon (Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+	
+	/**
+	 * Queues a mutation of the lines of a file and waits until it is committed
+	 *
+	 * @param file Path of the file
+	 * @param edit Mutates the lines of the file and returns the result of the mutation
+	 * @param <T>  Type of the result
+	 *
+	 * @return The result of the mutation
+	 *
+	 * @throws CompletionException if the file couldn't be committed
+	 */
+	
+	<T> T edit (Path file, Function<List<String>, T> edit) {
+		return submit(file, new Pending(edit, null, null));
+	}
+	
+	/**
+	 * Queues a mutation of the lines of a file without waiting for it to be committed
+	 *
+	 * @param file Path of the file
+	 * @param edit Mutates the lines of the file
+	 *
+	 * @return Completes once the mutation is committed, exceptionally if the file couldn't be committed
+	 */
+	
+	CompletableFuture<Object> editLater (Path file, Function<List<String>, ?> edit) {
+		return enqueue(file, new Pending(edit, null, null), false);
+	}
+	
+	/**
+	 * Queues a transformation of every line of a file and waits until it is committed
+	 *
+	 * @param file      Path of the file
+	 * @param transform Returns the new content of a line, or null to keep the line as it is
+	 *
+	 * @return The amount of changed lines
+	 *
+	 * @throws CompletionException if the file couldn't be committed
+	 */
+	
+	int transform (Path file, Function<String, String> transform) {
+		return submit(file, new Pending(null, null, transform));
+	}
+	
+	/**
+	 * Queues text to be appended to a file and waits until it is committed
+	 *
+	 * @param file Path of the file
+	 * @param text The text to append as new lines
+	 *
+	 * @throws CompletionException if the file couldn't be committed
+	 */
+	
+	void append (Path file, String text) {
+		submit(file, new Pending(null, text, null));
+	}
+	
+	/**
+	 * Sets how long mutations of a file that arrived during a commit are collected before they are committed together
+	 *
+	 * @param millis The window in milliseconds
+	 */
+	
+	void setWindow (long millis) {
+		window = Math.max(0, millis);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> T submit (Path file, Pending mutation) {
+		return (T) enqueue(file, mutation, true).join();
+	}
+	
+	/**
+	 * Checks that the calling thread isn't committing a batch, so it can change files
+	 *
+	 * @throws IllegalStateException if the calling thread is committing a batch
+	 */
+	
+	void checkNotCommitting () {
+		Path file = committing.get();
+		
+		if (file != null)
+			throw new IllegalStateException("Files can't be changed while changing " + file);
+	}
+	
+	/**
+	 * @return True if the calling thread is committing a batch
+	 */
+	
+	boolean isCommitting () {
+		return committing.get() != null;
+	}
+	
+	/**
+	 * Queues a mutation, and commits it right away if no batch of the file is being committed
+	 *
+	 * @param file     Path of the file
+	 * @param mutation The mutation
+	 * @param inline   Should an immediate commit run on the calling thread, or on a writer thread
+	 *
+	 * @return Completes once the mutation is committed
+	 *
+	 * @throws IllegalStateException if the calling thread is committing a batch
+	 */
+	
+	private CompletableFuture<Object> enqueue (Path file, Pending mutation, boolean inline) {
+		checkNotCommitting();
+		boolean idle;
+		
+		synchronized (this) {
+			pending.computeIfAbsent(file, key -> new ArrayList<>()).add(mutation);
+			idle = scheduled.putIfAbsent(file, true) == null;
+		}
+		
+		if (idle && inline)
+			flush(file);
+		else if (idle)
+			writers.execute(() -> flush(file));
+		
+		return mutation.done;
+	}
+	
+	/**
+	 * Schedules the next batch of a file, which collects the mutations queued during the previous batch. Batches are
+	 * collected on a single scheduler thread and committed on writer threads, so a slow commit of one file never
+	 * delays the commits of other files.
+	 *
+	 * @param file Path of the file
+	 */
+	
+	private void schedule (Path file) {
+		if (window == 0)
+			writers.execute(() -> flush(file));
+		else
+			scheduler.schedule(() -> writers.execute(() -> flush(file)), window, TimeUnit.MILLISECONDS);
+	}
+	
+	private void flush (Path file) {
+		List<Pending> batch;
+		
+		synchronized (this) {
+			batch = pending.remove(file);
+		}
+		
+		committing.set(file);
+		
+		try {
+			committer.accept(file, batch);
+		} catch (RuntimeException e) {
+			for (Pending mutation : batch)
+				mutation.fail(e);
+		} finally {
+			committing.remove();
+		}
+		
+		synchronized (this) {
+			if (pending.containsKey(file))
+				schedule(file);
+			else
+				scheduled.remove(file);
+		}
+	}
+	
+	/**
+	 * A mutation waiting to be committed. Either an edit of the lines of the file, a transformation of each of its
+	 * lines, or text appended to it.
+	 */
+	
+	static final class Pending {
+		
+		private final Function<List<String>, ?> edit;
+		private final String appended;
+		private final Function<String, String> transform;
+		private final CompletableFuture<Object> done = new CompletableFuture<>();
+		private Object result;
+		private RuntimeException failure;
+		private int changed;
+		
+		private Pending (Function<List<String>, ?> edit, String appended, Function<String, String> transform) {
+			this.edit      = edit;
+			this.appended  = appended;
+			this.transform = transform;
+		}
+		
+		/**
+		 * @return The appended text, or null if this mutation is an edit
+		 */
+		
+		String appended () {
+			return appended;
+		}
+		
+		/**
+		 * @return True if this mutation transforms each line on its own, so it can be applied while streaming the file
+		 */
+		
+		boolean isTransform () {
+			return transform != null;
+		}
+		
+		/**
+		 * Applies this transformation to a single line
+		 *
+		 * @param line The line
+		 *
+		 * @return The new content of the line
+		 */
+		
+		String transform (String line) {
+			String res = transform.apply(line);
+			
+			if (res == null)
+				return line;
+			
+			changed++;
+			return res;
+		}
+		
+		/**
+		 * @return The amount of lines this transformation changed so far
+		 */
+		
+		int changed () {
+			return changed;
+		}
+		
+		/**
+		 * Applies this mutation to the lines of the file in memory. An edit that throws fails only this mutation, so it
+		 * must not change the lines before it throws.
+		 *
+		 * @param lines The lines of the file
+		 */
+		
+		void apply (List<String> lines) {
+			if (edit != null) {
+				try {
+					result = edit.apply(lines);
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+			} else if (transform != null) {
+				for (int i = 0; i < lines.size(); i++)
+					lines.set(i, transform(lines.get(i)));
+			} else {
+				Collections.addAll(lines, FileCache.values(appended));
+			}
+		}
+		
+		/**
+		 * Releases the caller once the mutation is on disk
+		 */
+		
+		void complete () {
+			if (failure != null)
+				done.completeExceptionally(failure);
+			else
+				done.complete(transform != null ? changed : result);
+		}
+		
+		/**
+		 * Releases the caller with the failure of the commit
+		 *
+		 * @param e The failure
+		 */
+		
+		void fail (Throwable e) {
+			done.completeExceptionally(e);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package modules.schedule;
+
+import modules.util.LongMap;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs delayed actions of the bot on a single shared thread.
+ * Delayed deletions of messages are grouped by channel into ticks: messages of the same channel whose deletion falls
+ * within the same tick are deleted together, by a single bulk delete where the bot may manage messages, so a burst of
+ * messages costs a request per tick instead of a request and a thread per message.
+ */
+
+public final class Scheduler {
+	
+	private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
+	private static final ScheduledThreadPoolExecutor EXECUTOR = executor();
+	private static final LongMap<Deletion> DELETIONS = new LongMap<>();
+	private static final long TICK = 1000;
+	private static final int BULK_MIN = 2;
+	private static final int BULK_MAX = 100;
+	
+	private Scheduler () {
+		throw new UnsupportedOperationException();
+	}
+	
+	private static ScheduledThreadPoolExecutor executor () {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "bot-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+	
+	/**
+	 * Runs an action after a delay. The action runs on the shared thread of the scheduler, so it shouldn't block.
+	 *
+	 * @param action The action to run
+	 * @param delay  The delay before running the action
+	 * @param unit   The unit of the delay
+	 *
+	 * @return The scheduled action, which can be cancelled
+	 */
+	
+	@NotNull
+	public static ScheduledFuture<?> schedule (Runnable action, long delay, TimeUnit unit) {
+		return EXECUTOR.schedule(() -> run(action), delay, unit);
+	}
+	
+	/**
+	 * Runs an action repeatedly. The action runs on the shared thread of the scheduler, so it shouldn't block.
+	 *
+	 * @param action The action to run
+	 * @param delay  The delay before the first run, and between the end of a run and the start of the next one
+	 * @param unit   The unit of the delay
+	 *
+	 * @return The scheduled action, which can be cancelled
+	 */
+	
+	@NotNull
+	public static ScheduledFuture<?> repeat (Runnable action, long delay, TimeUnit unit) {
+		return EXECUTOR.scheduleWithFixedDelay(() -> run(action), delay, delay, unit);
+	}
+	
+	/**
+	 * Deletes a message after a delay. The message is deleted at the end of the tick its delay falls in, along with
+	 * the other messages of its channel due in that tick.
+	 *
+	 * @param message The message to delete
+	 * @param delay   The delay before deleting the message, in milliseconds
+	 */
+	
+	public static void deleteLater (Message message, long delay) {
+		MessageChannel channel = message.getChannel();
+		long due = (System.currentTimeMillis() + delay + TICK - 1) / TICK * TICK;
+		
+		synchronized (DELETIONS) {
+			Deletion deletion = DELETIONS.get(channel.getIdLong());
+			
+			if (deletion == null || deletion.due != due) {
+				deletion = new Deletion(channel, due);
+				DELETIONS.put(channel.getIdLong(), deletion);
+				schedule(deletion::flush, due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			}
+			
+			deletion.messages.add(message.getId());
+		}
+	}
+	
+	private static void run (Runnable action) {
+		try {
+			action.run();
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Messages of a single channel that are due to be deleted in the same tick
+	 */
+	
+	private static final class Deletion {
+		
+		private final MessageChannel channel;
+		private final long due;
+		private final List<String> messages = new ArrayList<>();
+		
+		private Deletion (MessageChannel channel, long due) {
+			this.channel = channel;
+			this.due     = due;
+		}
+		
+		private void flush () {
+			synchronized (DELETIONS) {
+				if (DELETIONS.get(channel.getIdLong()) == this)
+					DELETIONS.remove(channel.getIdLong());
+			}
+			
+			boolean bulk = channel instanceof TextChannel &&
+			               ((TextChannel) channel).getGuild()
+			                                      .getSelfMember()
+			                                      .hasPermission((TextChannel) channel, Permission.MESSAGE_MANAGE);
+			
+			for (int from = 0; from < messages.size(); from += BULK_MAX) {
+				List<String> chunk = messages.subList(from, Math.min(messages.size(), from + BULK_MAX));
+				
+				if (bulk && chunk.size() >= BULK_MIN) {
+					((TextChannel) channel).deleteMessagesByIds(chunk).queue();
+					continue;
+				}
+				
+				for (String message : chunk)
+					channel.deleteMessageById(message).queue();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package modules.trigger;
+
+import modules.util.LongMap;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.events.channel.text.TextChannelCreateEvent;
+import net.dv8tion.jda.api.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.text.update.TextChannelUpdateNameEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Routes received messages to handlers by the ID of their channel.
+ * Handlers are registered on channel IDs, or on channel names which are resolved to the IDs of the text channels
+ * holding them once the bot is ready, and again whenever a text channel is created, renamed or deleted. Routing a
+ * message is then a single lookup in a {@link LongMap}, and the map is replaced as a whole when the routes change, so
+ * messages are routed without locking.
+ */
+
+public final class ChannelRouter extends ListenerAdapter {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ChannelRouter.class);
+	
+	private final LongMap<List<Consumer<MessageReceivedEvent>>> byId = new LongMap<>();
+	private final Map<String, List<Consumer<MessageReceivedEvent>>> byName = new HashMap<>();
+	private volatile LongMap<List<Consumer<MessageReceivedEvent>>> routes = new LongMap<>();
+	private JDA jda;
+	
+	/**
+	 * Routes the messages of a channel to a handler
+	 *
+	 * @param channel The ID of the channel
+	 * @param handler Handles the messages of the channel
+	 *
+	 * @return This router
+	 */
+	
+	@NotNull
+	public synchronized ChannelRouter route (long channel, Consumer<MessageReceivedEvent> handler) {
+		List<Consumer<MessageReceivedEvent>> handlers = byId.get(channel);
+		
+		if (handlers == null)
+			byId.put(channel, handlers = new ArrayList<>());
+		
+		handlers.add(handler);
+		resolve();
+		return this;
+	}
+	
+	/**
+	 * Routes the messages of every text channel with a name to a handler
+	 *
+	 * @param name    The name of the channels, ignoring case
+	 * @param handler Handles the messages of the channels
+	 *
+	 * @return This router
+	 */
+	
+	@NotNull
+	public synchronized ChannelRouter route (String name, Consumer<MessageReceivedEvent> handler) {
+		byName.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new ArrayList<>()).add(handler);
+		resolve();
+		return this;
+	}
+	
+	/**
+	 * @param channel The ID of a channel
+	 *
+	 * @return True if the messages of the channel are routed to any handler
+	 */
+	
+	public boolean isRouted (long channel) {
+		return routes.containsKey(channel);
+	}
+	
+	@Override
+	public void onReady (@Nonnull ReadyEvent event) {
+		resolve(event.getJDA());
+	}
+	
+	@Override
+	public void onTextChannelCreate (@Nonnull TextChannelCreateEvent event) {
+		resolve(event.getJDA());
+	}
+	
+	@Override
+	public void onTextChannelDelete (@Nonnull TextChannelDeleteEvent event) {
+		resolve(event.getJDA());
+	}
+	
+	@Override
+	public void onTextChannelUpdateName (@Nonnull TextChannelUpdateNameEvent event) {
+		resolve(event.getJDA());
+	}
+	
+	@Override
+	public void onMessageReceived (@Nonnull MessageReceivedEvent event) {
+		List<Consumer<MessageReceivedEvent>> handlers = routes.get(event.getChannel().getIdLong());
+		
+		if (handlers == null)
+			return;
+		
+		for (Consumer<MessageReceivedEvent> handler : handlers) {
+			try {
+				handler.accept(event);
+			} catch (RuntimeException e) {
+				logger.error(e.getMessage());
+			}
+		}
+	}
+	
+	private synchronized void resolve (JDA jda) {
+		this.jda = jda;
+		resolve();
+	}
+	
+	/**
+	 * Rebuilds the routes from the handlers registered by ID, and the handlers registered by the names of the text
+	 * channels known to JDA. Names aren't resolved before JDA is ready.
+	 */
+	
+	private void resolve () {
+		LongMap<List<Consumer<MessageReceivedEvent>>> resolved = new LongMap<>(byId.size() + byName.size());
+		byId.forEach((channel, handlers) -> resolved.put(channel, new ArrayList<>(handlers)));
+		
+		if (jda != null && !byName.isEmpty()) {
+			for (TextChannel channel : jda.getTextChannels()) {
+				List<Consumer<MessageReceivedEvent>> handlers = byName.get(channel.getName().toLowerCase(Locale.ROOT));
+				
+				if (handlers == null)
+					continue;
+				
+				List<Consumer<MessageReceivedEvent>> routed = resolved.get(channel.getIdLong());
+				
+				if (routed == null)
+					resolved.put(channel.getIdLong(), routed = new ArrayList<>());
+				
+				routed.addAll(handlers);
+			}
+		}
+		
+		routes = resolved;
+	}
+}
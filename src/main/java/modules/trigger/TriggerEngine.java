@@ -0,0 +1,263 @@
+package modules.trigger;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Responds to the content of messages.
+ * Triggers are registered once on a builder and compiled into a single pattern, in which every trigger is an
+ * alternative of its own named group. The content of a message is matched in a single pass over it, and only the
+ * triggers whose group took part in a match are dispatched, each at most once per message.
+ * When several triggers match at the same position of a message, the one registered first takes that position.
+ * Since the groups of all the triggers are numbered together, a trigger can't refer to its groups by number, and the
+ * names of its groups must be its own.
+ */
+
+public final class TriggerEngine {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TriggerEngine.class);
+	private static final String GROUP = "t";
+	private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.MULTILINE |
+	                                 Pattern.DOTALL | Pattern.COMMENTS | Pattern.UNIX_LINES |
+	                                 Pattern.UNICODE_CHARACTER_CLASS;
+	
+	private final Pattern pattern;
+	private final List<Consumer<MessageReceivedEvent>> actions;
+	
+	private TriggerEngine (Pattern pattern, List<Consumer<MessageReceivedEvent>> actions) {
+		this.pattern = pattern;
+		this.actions = actions;
+	}
+	
+	@NotNull
+	public static Builder builder () {
+		return new Builder();
+	}
+	
+	/**
+	 * Dispatches the triggers that match the content of a message
+	 *
+	 * @param event The event of the received message
+	 *
+	 * @return The amount of dispatched triggers
+	 */
+	
+	public int dispatch (MessageReceivedEvent event) {
+		boolean[] fired = match(event.getMessage().getContentRaw());
+		int count = 0;
+		
+		for (int i = 0; fired != null && i < fired.length; i++) {
+			if (!fired[i])
+				continue;
+			
+			count++;
+			
+			try {
+				actions.get(i).accept(event);
+			} catch (RuntimeException e) {
+				logger.error(e.getMessage());
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Finds the triggers that match a text
+	 *
+	 * @param content The text
+	 *
+	 * @return For each trigger in the order they were registered, true if it matches, or null if none matches
+	 */
+	
+	boolean[] match (String content) {
+		if (actions.isEmpty())
+			return null;
+		
+		Matcher matcher = pattern.matcher(content);
+		boolean[] fired = null;
+		
+		while (matcher.find()) {
+			for (int i = 0; i < actions.size(); i++) {
+				if (matcher.start(GROUP + i) == -1)
+					continue;
+				
+				if (fired == null)
+					fired = new boolean[actions.size()];
+				
+				fired[i] = true;
+				break;
+			}
+		}
+		
+		return fired;
+	}
+	
+	/**
+	 * Registers triggers and compiles them into an engine
+	 */
+	
+	public static final class Builder {
+		
+		private final List<String> alternatives = new ArrayList<>();
+		private final Set<String> names = new HashSet<>();
+		private final List<Consumer<MessageReceivedEvent>> actions = new ArrayList<>();
+		
+		private Builder () {
+		}
+		
+		/**
+		 * Registers a trigger that fires when a message contains a text
+		 *
+		 * @param text       The text to find in the message
+		 * @param ignoreCase Should the match ignore case or not
+		 * @param action     Responds to the message
+		 *
+		 * @return This builder
+		 */
+		
+		@NotNull
+		public Builder literal (String text, boolean ignoreCase, Consumer<MessageReceivedEvent> action) {
+			return add(Pattern.quote(text), ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0, action);
+		}
+		
+		/**
+		 * Registers a trigger that fires when a regular expression matches a message
+		 *
+		 * @param regex        The regular expression, which refers to its groups by name rather than by number
+		 * @param flags        The match flags of {@link Pattern}, out of CASE_INSENSITIVE, UNICODE_CASE, MULTILINE,
+		 *                     DOTALL, COMMENTS, UNIX_LINES and UNICODE_CHARACTER_CLASS
+		 * @param wholeMessage Should the expression match the whole message, or a part of it
+		 * @param action       Responds to the message
+		 *
+		 * @return This builder
+		 *
+		 * @throws IllegalArgumentException If the expression has a numbered backreference or a group name used by
+		 *                                  another trigger, or if a flag isn't supported
+		 */
+		
+		@NotNull
+		public Builder regex (String regex, int flags, boolean wholeMessage, Consumer<MessageReceivedEvent> action) {
+			if ((flags & ~FLAGS) != 0)
+				throw new IllegalArgumentException("Triggers can't use the match flags " + (flags & ~FLAGS));
+			
+			Pattern.compile(regex, flags);
+			names.addAll(groups(regex, has(flags, Pattern.COMMENTS)));
+			String closed = has(flags, Pattern.COMMENTS) ? regex + "\n" : regex;
+			return add(wholeMessage ? "\\A(?:" + closed + ")\\z" : closed, flags, action);
+		}
+		
+		/**
+		 * Compiles the registered triggers
+		 *
+		 * @return The engine of the triggers
+		 */
+		
+		@NotNull
+		public TriggerEngine build () {
+			return new TriggerEngine(Pattern.compile(String.join("|", alternatives)), new ArrayList<>(actions));
+		}
+		
+		private Builder add (String regex, int flags, Consumer<MessageReceivedEvent> action) {
+			alternatives.add("(?<" + GROUP + actions.size() + ">(?" + inline(flags) + ":" + regex + "))");
+			actions.add(action);
+			return this;
+		}
+		
+		/**
+		 * Finds the names of the groups of a regular expression, and checks that it can be combined with the other
+		 * triggers
+		 *
+		 * @param regex    The regular expression, which compiles on its own
+		 * @param comments Is the expression in comments mode or not
+		 *
+		 * @return The names of the named groups of the expression
+		 *
+		 * @throws IllegalArgumentException If the expression has a numbered backreference, or a group name that is
+		 *                                  used by the engine or by another trigger
+		 */
+		
+		private Set<String> groups (String regex, boolean comments) {
+			Set<String> found = new HashSet<>();
+			int depth = 0;
+			
+			for (int i = 0; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				
+				if (c == '\\' && i + 1 < regex.length()) {
+					char escaped = regex.charAt(++i);
+					
+					if (escaped == 'Q') {
+						int end = regex.indexOf("\\E", i);
+						i = end < 0 ? regex.length() : end + 1;
+					} else if (escaped >= '1' && escaped <= '9')
+						throw new IllegalArgumentException("Triggers must refer to groups by name: " + regex);
+				} else if (c == '#' && comments) {
+					int end = regex.indexOf('\n', i);
+					i = end < 0 ? regex.length() : end;
+				} else if (c == '[') {
+					depth++;
+					
+					// A bracket right after the opening one is a part of the class
+					if (regex.startsWith("^", i + 1))
+						i++;
+					
+					if (regex.startsWith("]", i + 1))
+						i++;
+				} else if (c == ']' && depth > 0)
+					depth--;
+				else if (depth == 0 && regex.startsWith("(?<", i) && i + 3 < regex.length() &&
+				         Character.isLetter(regex.charAt(i + 3))) {
+					String name = regex.substring(i + 3, regex.indexOf('>', i));
+					
+					if (name.matches(GROUP + "\\d+") || names.contains(name))
+						throw new IllegalArgumentException("The group name " + name + " is already used: " + regex);
+					
+					found.add(name);
+				}
+			}
+			
+			return found;
+		}
+		
+		/**
+		 * Converts match flags to the letters of an embedded flag expression, so each trigger keeps its own flags
+		 * inside the combined pattern
+		 *
+		 * @param flags The match flags of {@link Pattern}
+		 *
+		 * @return The flag letters, turning the flags that aren't set off
+		 */
+		
+		private static String inline (int flags) {
+			StringBuilder on = new StringBuilder();
+			StringBuilder off = new StringBuilder();
+			(has(flags, Pattern.CASE_INSENSITIVE) ? on : off).append('i');
+			(has(flags, Pattern.UNICODE_CASE) ? on : off).append('u');
+			(has(flags, Pattern.MULTILINE) ? on : off).append('m');
+			(has(flags, Pattern.DOTALL) ? on : off).append('s');
+			(has(flags, Pattern.COMMENTS) ? on : off).append('x');
+			(has(flags, Pattern.UNIX_LINES) ? on : off).append('d');
+			
+			// Turning U off would turn u off too, and no trigger is in U outside its own group
+			if (has(flags, Pattern.UNICODE_CHARACTER_CLASS))
+				on.append('U');
+			
+			return on + "-" + off;
+		}
+		
+		private static boolean has (int flags, int flag) {
+			return (flags & flag) != 0;
+		}
+	}
+}
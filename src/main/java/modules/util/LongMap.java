@@ -0,0 +1,293 @@
+package modules.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Map from primitive longs, such as Discord snowflakes, to values.
+ * Keys and values are kept in two parallel arrays with open addressing and linear probing, so lookups neither box
+ * their key nor allocate, and removals shift the following entries back instead of leaving tombstones. The map isn't
+ * synchronized.
+ *
+ * @param <V> Type of the values
+ */
+
+public final class LongMap<V> {
+	
+	private static final int MIN_CAPACITY = 16;
+	private static final long FREE = 0;
+	
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+	private boolean hasFreeKey;
+	private Object freeValue;
+	
+	public LongMap () {
+		this(MIN_CAPACITY);
+	}
+	
+	/**
+	 * @param expected The amount of entries the map should hold without growing
+	 */
+	
+	public LongMap (int expected) {
+		int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expected * 2 - 1) - 1) << 1;
+		this.keys   = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask   = capacity - 1;
+	}
+	
+	/**
+	 * Returns the value of a key
+	 *
+	 * @param key The key
+	 *
+	 * @return The value of the key, or null if the key isn't in the map
+	 */
+	
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V get (long key) {
+		if (key == FREE)
+			return hasFreeKey ? (V) freeValue : null;
+		
+		int slot = find(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+	
+	/**
+	 * @param key The key
+	 *
+	 * @return True if the key is in the map
+	 */
+	
+	public boolean containsKey (long key) {
+		return key == FREE ? hasFreeKey : find(key) >= 0;
+	}
+	
+	/**
+	 * Sets the value of a key
+	 *
+	 * @param key   The key
+	 * @param value The new value of the key
+	 *
+	 * @return The previous value of the key, or null if it wasn't in the map
+	 */
+	
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V put (long key, V value) {
+		if (key == FREE) {
+			V previous = (V) freeValue;
+			
+			if (!hasFreeKey)
+				size++;
+			
+			hasFreeKey = true;
+			freeValue  = value;
+			return previous;
+		}
+		
+		int slot = slot(key);
+		
+		while (keys[slot] != FREE) {
+			if (keys[slot] == key) {
+				V previous = (V) values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		keys[slot]   = key;
+		values[slot] = value;
+		
+		if (++size * 2 > keys.length)
+			resize(keys.length * 2);
+		
+		return null;
+	}
+	
+	/**
+	 * Removes a key
+	 *
+	 * @param key The key
+	 *
+	 * @return The value of the key, or null if it wasn't in the map
+	 */
+	
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V remove (long key) {
+		if (key == FREE) {
+			if (!hasFreeKey)
+				return null;
+			
+			V previous = (V) freeValue;
+			hasFreeKey = false;
+			freeValue  = null;
+			size--;
+			return previous;
+		}
+		
+		int slot = find(key);
+		
+		if (slot < 0)
+			return null;
+		
+		V previous = (V) values[slot];
+		shift(slot);
+		size--;
+		return previous;
+	}
+	
+	/**
+	 * @return The amount of keys in the map
+	 */
+	
+	public int size () {
+		return size;
+	}
+	
+	/**
+	 * @return True if the map has no keys
+	 */
+	
+	public boolean isEmpty () {
+		return size == 0;
+	}
+	
+	/**
+	 * Removes every key
+	 */
+	
+	public void clear () {
+		Arrays.fill(keys, FREE);
+		Arrays.fill(values, null);
+		hasFreeKey = false;
+		freeValue  = null;
+		size       = 0;
+	}
+	
+	/**
+	 * @return The keys of the map, in no particular order
+	 */
+	
+	@NotNull
+	public long[] keys () {
+		long[] res = new long[size];
+		int at = 0;
+		
+		if (hasFreeKey)
+			res[at++] = FREE;
+		
+		for (long key : keys) {
+			if (key != FREE)
+				res[at++] = key;
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Passes every entry of the map to a consumer, in no particular order
+	 *
+	 * @param consumer Receives the entries
+	 */
+	
+	@SuppressWarnings("unchecked")
+	public void forEach (EntryConsumer<? super V> consumer) {
+		if (hasFreeKey)
+			consumer.accept(FREE, (V) freeValue);
+		
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE)
+				consumer.accept(keys[i], (V) values[i]);
+		}
+	}
+	
+	private int find (long key) {
+		int slot = slot(key);
+		
+		while (keys[slot] != FREE) {
+			if (keys[slot] == key)
+				return slot;
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return -1;
+	}
+	
+	private int slot (long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & mask;
+	}
+	
+	/**
+	 * Empties a slot and moves back the entries after it whose probe passed through it, so every key stays reachable
+	 * from its own slot
+	 *
+	 * @param free The slot to empty
+	 */
+	
+	private void shift (int free) {
+		int slot = free;
+		
+		while (true) {
+			slot = (slot + 1) & mask;
+			
+			if (keys[slot] == FREE)
+				break;
+			
+			int home = slot(keys[slot]);
+			
+			if (((slot - home) & mask) >= ((slot - free) & mask)) {
+				keys[free]   = keys[slot];
+				values[free] = values[slot];
+				free         = slot;
+			}
+		}
+		
+		keys[free]   = FREE;
+		values[free] = null;
+	}
+	
+	private void resize (int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys   = new long[capacity];
+		values = new Object[capacity];
+		mask   = capacity - 1;
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == FREE)
+				continue;
+			
+			int slot = slot(oldKeys[i]);
+			
+			while (keys[slot] != FREE)
+				slot = (slot + 1) & mask;
+			
+			keys[slot]   = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+	
+	/**
+	 * Receives the entries of a map
+	 *
+	 * @param <V> Type of the values
+	 */
+	
+	@FunctionalInterface
+	public interface EntryConsumer<V> {
+		
+		void accept (long key, V value);
+	}
+}
@@ -0,0 +1,103 @@
+package modules.command;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how arguments strings are compiled and how the content of messages is validated against them
+ */
+
+public class ArgumentSchemaTest {
+	
+	private static final ArgumentSchema SCHEMA =
+			ArgumentSchema.compile("test", "<target:user> {add|remove} [amount:int] [reason]");
+	
+	@Test
+	public void compilesEveryKindOfArgument () {
+		assertEquals(4, SCHEMA.size());
+		assertEquals(2, SCHEMA.required());
+		assertEquals(2, SCHEMA.indexOf("AMOUNT"));
+		assertEquals(-1, SCHEMA.indexOf("missing"));
+		assertEquals("<target:user> {add|remove} [amount:int] [reason]", SCHEMA.toString());
+		assertSame(ArgumentSchema.EMPTY, ArgumentSchema.compile("test", "  "));
+		assertSame(ArgumentSchema.EMPTY, ArgumentSchema.compile("test", null));
+	}
+	
+	@Test
+	public void rejectsInvalidSyntax () {
+		String[] invalid = {"<a", "<a [b]>", "[a] <b>", "<>", "<a:float>", "<a|b>", "{a||b}", "a"};
+		
+		for (String arguments : invalid) {
+			try {
+				ArgumentSchema.compile("test", arguments);
+				fail(arguments);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().startsWith("Invalid argument syntax at test"));
+			}
+		}
+	}
+	
+	@Test
+	public void parsesArgumentsInPlace () {
+		Arguments args = SCHEMA.parse("  <@!123456789012345678>  REMOVE -42 spamming in  general ");
+		
+		assertEquals(4, args.size());
+		assertEquals(123456789012345678L, args.getLong("target", 0));
+		assertEquals(1, args.getChoice(1));
+		assertEquals(-42, args.getLong("amount", 0));
+		assertEquals("spamming in  general", args.getString("reason"));
+		assertEquals("<@!123456789012345678>", args.getString(0));
+	}
+	
+	@Test
+	public void leavesOptionalArgumentsUnset () {
+		Arguments args = SCHEMA.parse("123 add");
+		
+		assertEquals(2, args.size());
+		assertEquals(123, args.getLong(0, 0));
+		assertTrue(args.has("target"));
+		assertFalse(args.has("amount"));
+		assertEquals(7, args.getLong("amount", 7));
+		assertNull(args.getString("reason"));
+		assertEquals(-1, args.getChoice(3));
+	}
+	
+	@Test
+	public void acceptsMentionsOfEveryType () {
+		ArgumentSchema schema = ArgumentSchema.compile("test", "<user:user> <channel:channel> <role:role>");
+		Arguments args = schema.parse("<@1> <#2> <@&3>");
+		
+		assertEquals(1, args.getLong("user", 0));
+		assertEquals(2, args.getLong("channel", 0));
+		assertEquals(3, args.getLong("role", 0));
+	}
+	
+	@Test
+	public void rejectsInvalidArguments () {
+		assertParseError(SCHEMA, "", "This command requires the argument `<target:user>`");
+		assertParseError(SCHEMA, "123", "This command requires the argument `{add|remove}`");
+		assertParseError(SCHEMA, "123 keep", "`keep` must be one of `add, remove`");
+		assertParseError(SCHEMA, "<@abc> add", "`<@abc>` isn't a valid target (user)");
+		assertParseError(SCHEMA, "<#1> add", "`<#1>` isn't a valid target (user)");
+		assertParseError(SCHEMA, "1 add 99999999999999999999", "`99999999999999999999` isn't a valid amount (int)");
+		assertParseError(SCHEMA, "1 add -", "`-` isn't a valid amount (int)");
+		assertParseError(ArgumentSchema.compile("test", "<a:int> <b:int>"), "1 2 3",
+		                 "Too many arguments, expected `<a:int> <b:int>`");
+		assertParseError(ArgumentSchema.EMPTY, " x ", "This command doesn't require arguments");
+	}
+	
+	@Test
+	public void acceptsNoArgumentsForEmptySchema () {
+		assertEquals(0, ArgumentSchema.EMPTY.parse("   ").size());
+	}
+	
+	private static void assertParseError (ArgumentSchema schema, String content, String message) {
+		try {
+			schema.parse(content);
+			fail(content);
+		} catch (IllegalArgumentException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+}
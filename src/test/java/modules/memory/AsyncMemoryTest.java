@@ -0,0 +1,61 @@
+package modules.memory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the calls of AsyncMemory on a file run in order and release the file before their futures complete.
+ */
+
+public class AsyncMemoryTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test(timeout = 10_000)
+	public void dependentStageCanJoinCallOnSameFile () throws IOException {
+		String path = file("a\n");
+		CountDownLatch started = new CountDownLatch(1);
+		
+		// Holds the file until the stage below is attached, so the stage runs when the write completes
+		AsyncMemory.edit(path, edit -> {
+			try {
+				started.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		CompletableFuture<String> line = AsyncMemory.writeFile(path, "b")
+		                                            .thenApply(ignored -> AsyncMemory.goLine(path, 2).join());
+		started.countDown();
+		
+		assertEquals("b", line.join());
+	}
+	
+	@Test(timeout = 10_000)
+	public void callsOnSameFileRunInOrder () throws IOException {
+		String path = file("");
+		
+		for (int i = 0; i < 50; i++)
+			AsyncMemory.writeFile(path, String.valueOf(i));
+		
+		assertEquals(Long.valueOf(50), AsyncMemory.findLine(path, "49", false, true).join());
+		assertEquals("0", AsyncMemory.goLine(path, 1).join());
+	}
+	
+	private String file (String content) throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file.toString();
+	}
+}
@@ -0,0 +1,329 @@
+package modules.memory;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the reads of Memory agree with each other and with its writes, whether the file is cached, streamed
+ * from disk, mapped or scanned in parallel.
+ */
+
+public class MemoryTest {
+	
+	private static final String[] LINES = {"Alpha beta", "gamma", "Gamma delta", "", "epsilon gamma"};
+	
+	// Cache budget, mapped threshold and parallel threshold that send reads through cached lines, a stream of the
+	// file, a mapping of the file and a parallel scan of the file
+	private static final long[][] READS = {
+			{FileCache.DEFAULT_BUDGET, Long.MAX_VALUE, Long.MAX_VALUE},
+			{0, Long.MAX_VALUE, Long.MAX_VALUE},
+			{0, 0, Long.MAX_VALUE},
+			{0, Long.MAX_VALUE, 0}
+	};
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	@After
+	public void reset () {
+		Memory.setCacheBudget(FileCache.DEFAULT_BUDGET);
+		Memory.setMappedThreshold(Long.MAX_VALUE);
+		Memory.setParallelThreshold(ParallelScanner.DEFAULT_THRESHOLD);
+		Memory.setCompactionRatio(Tombstones.DEFAULT_RATIO);
+		Memory.setCommitWindow(WriteQueue.DEFAULT_WINDOW);
+	}
+	
+	@Test
+	public void findMethodsAgreeOnEveryRead () throws IOException {
+		for (long[] read : READS) {
+			Memory.setCacheBudget(read[0]);
+			Memory.setMappedThreshold(read[1]);
+			Memory.setParallelThreshold(read[2]);
+			String path = file(String.join("\n", LINES) + "\n");
+			
+			for (boolean ignoreCase : new boolean[] {false, true}) {
+				for (boolean keywordIsLine : new boolean[] {false, true}) {
+					long[] lines = Memory.findLines(path, "gamma", ignoreCase, keywordIsLine);
+					long[] expected = keywordIsLine ? new long[] {2}
+					                                : ignoreCase ? new long[] {2, 3, 5} : new long[] {2, 5};
+					String flags = "ignoreCase=" + ignoreCase + ", keywordIsLine=" + keywordIsLine;
+					
+					assertArrayEquals(flags, expected, lines);
+					assertEquals(flags, lines.length > 0, Memory.find(path, "gamma", ignoreCase, keywordIsLine));
+					assertEquals(flags, lines[0], Memory.findLine(path, "gamma", ignoreCase, keywordIsLine));
+					assertEquals(flags, lines[lines.length - 1],
+					             Memory.findLast(path, "gamma", ignoreCase, keywordIsLine));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void ignoreCaseFoldsAlikeOnEveryRead () throws IOException {
+		for (long[] read : READS) {
+			Memory.setCacheBudget(read[0]);
+			Memory.setMappedThreshold(read[1]);
+			Memory.setParallelThreshold(read[2]);
+			// The Kelvin sign and the long s fold to an ASCII k and s
+			String path = file("\u212Aelvin\n\u017Fun\n");
+			String config = Arrays.toString(read);
+			
+			assertArrayEquals(config, new long[] {1}, Memory.findLines(path, "kelvin", true, true));
+			assertArrayEquals(config, new long[] {1}, Memory.findLines(path, "elvin", true, false));
+			assertArrayEquals(config, new long[] {1}, Memory.findLines(path, "KEL", true, false));
+			assertArrayEquals(config, new long[] {2}, Memory.findLines(path, "SUN", true, true));
+			assertArrayEquals(config, new long[0], Memory.findLines(path, "sun", false, true));
+			assertArrayEquals(config, new long[] {1},
+			                  Memory.findAll(path, Arrays.asList("kel", "sun"), true).get("kel"));
+			assertArrayEquals(config, new long[] {2},
+			                  Memory.findAll(path, Arrays.asList("kel", "sun"), true).get("sun"));
+		}
+	}
+	
+	@Test
+	public void searchIndexAnswersLikeScan () throws IOException {
+		String[] keywords = {"gamma", "GAMMA delta", "amm", "ga", "", "\u212Aelvin", "kel", "zeta"};
+		
+		for (long budget : new long[] {FileCache.DEFAULT_BUDGET, 0}) {
+			Memory.setCacheBudget(budget);
+			String path = file(String.join("\n", LINES) + "\n\u212Aelvin\n");
+			String plain = file("");
+			Memory.enableSearchIndex(path);
+			
+			try {
+				for (int step = 0; step < 4; step++) {
+					if (step == 1)
+						Memory.writeFile(path, "kelvin gamma");
+					else if (step == 2)
+						Memory.replaceAll(path, "gamma", "zeta", true, false);
+					else if (step == 3)
+						Memory.deleteLine(path, 1);
+					
+					Files.write(Paths.get(plain), content(path).getBytes(StandardCharsets.UTF_8));
+					
+					for (String keyword : keywords) {
+						for (boolean ignoreCase : new boolean[] {false, true}) {
+							for (boolean keywordIsLine : new boolean[] {false, true}) {
+								String call = "step " + step + ", " + keyword + ", " + ignoreCase + ", " + keywordIsLine;
+								assertArrayEquals(call, Memory.findLines(plain, keyword, ignoreCase, keywordIsLine),
+								                  Memory.findLines(path, keyword, ignoreCase, keywordIsLine));
+								assertEquals(call, Memory.findLast(plain, keyword, ignoreCase, keywordIsLine),
+								             Memory.findLast(path, keyword, ignoreCase, keywordIsLine));
+							}
+						}
+					}
+				}
+				
+				assertArrayEquals(new long[] {5, 6}, Memory.findLines(path, "kelvin", true, false));
+			} finally {
+				Memory.disableSearchIndex(path);
+			}
+		}
+	}
+	
+	@Test
+	public void savedSearchIndexHoldsNoLines () throws IOException {
+		String path = file("secret line\nanother secret\n");
+		Memory.enableSearchIndex(path);
+		
+		try {
+			String saved = new String(Files.readAllBytes(Paths.get(path + ".idx")), StandardCharsets.ISO_8859_1);
+			assertFalse(saved.contains("secret"));
+			
+			Memory.disableSearchIndex(path);
+			Memory.enableSearchIndex(path);
+			assertArrayEquals(new long[] {1, 2}, Memory.findLines(path, "SECRET", true, false));
+		} finally {
+			Memory.disableSearchIndex(path);
+		}
+	}
+	
+	@Test
+	public void keywordIsLineMeansWholeLine () {
+		assertTrue(Memory.findInLine("gamma", "gamma", false, true));
+		assertFalse(Memory.findInLine("Gamma delta", "gamma", true, true));
+		assertTrue(Memory.findInLine("Gamma delta", "gamma", true, false));
+		assertFalse(Memory.findInLine("Gamma delta", "gamma", false, false));
+	}
+	
+	@Test
+	public void appendAllKeepsEmptyValues () throws IOException {
+		for (long budget : new long[] {FileCache.DEFAULT_BUDGET, 0}) {
+			Memory.setCacheBudget(budget);
+			String path = file("");
+			Memory.appendAll(path, Arrays.asList("a", "", "b", ""));
+			Memory.writeFile(path, "c");
+			
+			assertEquals("a\n\nb\n\nc", content(path));
+			assertEquals("", Memory.goLine(path, 4));
+			assertEquals("c", Memory.goLine(path, 5));
+			
+			Memory.writeFile(path, "");
+			assertEquals("a\n\nb\n\nc\n\n", content(path));
+			assertEquals(6, Memory.lines(path).count());
+			
+			Memory.overwriteFile(path, Arrays.asList("a", "", "c", ""));
+			assertEquals("a\n\nc\n\n", content(path));
+			assertEquals(1, Memory.replaceAll(path, "c", "", false, true));
+			assertEquals("a\n\n\n\n", content(path));
+			assertEquals(4, Memory.lines(path).count());
+		}
+	}
+	
+	@Test
+	public void cachedAndStreamedReadsSplitLinesAlike () throws IOException {
+		String content = "a\rb x\r\n\nc x\n";
+		
+		for (long budget : new long[] {FileCache.DEFAULT_BUDGET, 0}) {
+			Memory.setCacheBudget(budget);
+			String path = file(content);
+			
+			assertEquals("a\rb x", Memory.goLine(path, 1));
+			assertEquals(2, Memory.findLines(path, "x", false, false).length);
+			assertEquals(2, Memory.replaceAll(path, "x", "y", false, false));
+			assertEquals("a\rb y\n\nc y\n", content(path));
+		}
+	}
+	
+	@Test
+	public void replaceMatchesWholeLinesOrParts () throws IOException {
+		String path = file(String.join("\n", LINES));
+		
+		assertFalse(Memory.replace(path, "beta", "BETA", false, true));
+		assertTrue(Memory.replace(path, "beta", "BETA", false, false));
+		assertEquals(1, Memory.replaceAll(path, "gamma", "GAMMA", false, true));
+		assertEquals("Alpha BETA", Memory.goLine(path, 1));
+		assertEquals("GAMMA", Memory.goLine(path, 2));
+		assertEquals("epsilon gamma", Memory.goLine(path, 5));
+	}
+	
+	@Test
+	public void deferredDeletionsAreSkippedByEveryRead () throws IOException {
+		Memory.setCompactionRatio(1);
+		
+		for (long budget : new long[] {FileCache.DEFAULT_BUDGET, 0}) {
+			Memory.setCacheBudget(budget);
+			String path = file("l1\nl2\nl3\nl4\nl5\n");
+			Memory.deleteLine(path, 2, true);
+			Memory.deleteLine(path, 3, true);
+			
+			if (budget > 0)
+				assertEquals("l1\nl2\nl3\nl4\nl5\n", content(path));
+			
+			assertEquals("l1", Memory.goLine(path, 1));
+			assertEquals("l3", Memory.goLine(path, 2));
+			assertEquals("l5", Memory.goLine(path, 3));
+			assertEquals("", Memory.goLine(path, 4));
+			assertEquals(3, Memory.countLines(path));
+			assertEquals(-1, Memory.findLine(path, "l4", false, true));
+			
+			Memory.writeFile(path, "l6");
+			assertEquals("l6", Memory.goLine(path, 4));
+			assertArrayEquals(new long[] {4}, Memory.findLines(path, "l6", false, true));
+			
+			// A file too large to be cached is compacted right away, so it is rewritten before the write is committed
+			if (budget == 0) {
+				assertEquals("l1\nl3\nl5\nl6", content(path));
+				assertFalse(Files.exists(Paths.get(path + ".dead")));
+			}
+		}
+	}
+	
+	@Test
+	public void marksOfFileThatNoLongerFitsAreCompactedByRead () throws IOException {
+		Memory.setCompactionRatio(1);
+		String path = file("l1\nl2\nl3\n");
+		Memory.deleteLine(path, 2, true);
+		assertTrue(Files.exists(Paths.get(path + ".dead")));
+		
+		Memory.setCacheBudget(0);
+		assertArrayEquals(new long[] {2}, Memory.findLines(path, "l3", false, true));
+		Memory.writeFile(path, "l4");
+		
+		assertEquals("l1\nl3\nl4", content(path));
+		assertFalse(Files.exists(Paths.get(path + ".dead")));
+	}
+	
+	@Test
+	public void failedEditLeavesFileAsItWas () throws IOException {
+		String path = file("a\nb");
+		
+		try {
+			Memory.edit(path, edit -> {
+				edit.append("c");
+				throw new IllegalStateException("rollback");
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("rollback", e.getMessage());
+		}
+		
+		assertTrue(Memory.edit(path, edit -> edit.overwrite(1, "A").delete(2)));
+		assertEquals("A", content(path));
+	}
+	
+	@Test
+	public void writesFromInsideEditAreRejected () throws IOException {
+		String path = file("a");
+		
+		try {
+			Memory.edit(path, edit -> Memory.writeFile(path, "b"));
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("a", content(path));
+		}
+		
+		Memory.writeFile(path, "b");
+		assertEquals("a\nb", content(path));
+	}
+	
+	@Test
+	public void readsSeeEveryCommittedWrite () throws Exception {
+		Memory.setCommitWindow(5);
+		String path = file("");
+		Thread[] writers = new Thread[4];
+		
+		for (int i = 0; i < writers.length; i++) {
+			int writer = i;
+			writers[i] = new Thread(() -> {
+				for (int j = 0; j < 25; j++)
+					Memory.writeFile(path, writer + ":" + j);
+			});
+			writers[i].start();
+		}
+		
+		for (Thread writer : writers)
+			writer.join();
+		
+		Set<String> lines = new HashSet<>(Arrays.asList(content(path).split("\n")));
+		assertEquals(100, lines.size());
+		
+		for (int i = 0; i < writers.length; i++) {
+			assertTrue(lines.contains(i + ":24"));
+			assertTrue(Memory.find(path, i + ":24", false, true));
+		}
+	}
+	
+	private String file (String content) throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file.toString();
+	}
+	
+	private static String content (String path) throws IOException {
+		return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,87 @@
+package modules.trigger;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that triggers combined into a single pattern match the same texts as they would on their own
+ */
+
+public class TriggerEngineTest {
+	
+	@Test
+	public void groupsOfEarlierTriggersDontShiftLaterOnes () {
+		TriggerEngine engine = TriggerEngine.builder()
+		                                    .regex("(a)(b)(c)", 0, false, event -> {})
+		                                    .regex("(?<word>x+)-\\k<word>", 0, true, event -> {})
+		                                    .literal("Hi", true, event -> {})
+		                                    .build();
+		
+		assertArrayEquals(new boolean[] {false, true, false}, engine.match("xx-xx"));
+		assertNull(engine.match("xx-x"));
+		assertArrayEquals(new boolean[] {true, false, true}, engine.match("abc, hi"));
+	}
+	
+	@Test
+	public void eachTriggerKeepsItsOwnFlags () {
+		TriggerEngine engine = TriggerEngine.builder()
+		                                    .regex("caf\u00e9", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE, false,
+		                                           event -> {})
+		                                    .regex("Tea", 0, false, event -> {})
+		                                    .regex("^\\w+$", Pattern.UNICODE_CHARACTER_CLASS, true, event -> {})
+		                                    .build();
+		
+		assertArrayEquals(new boolean[] {true, false, false}, engine.match("CAF\u00c9 tea"));
+		assertArrayEquals(new boolean[] {false, false, true}, engine.match("\u00e9t\u00e9"));
+	}
+	
+	@Test
+	public void rejectsNumberedBackreferences () {
+		String[] invalid = {"(a)\\1", "(?<x>a)\\1", "(a)(?x: # comment\n \\2)"};
+		
+		for (String regex : invalid) {
+			try {
+				TriggerEngine.builder().regex(regex, 0, false, event -> {});
+				fail(regex);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains(regex));
+			}
+		}
+		
+		TriggerEngine.builder()
+		             .regex("[(?<t0>\\]]\\Q\\1(?<t0>\\E", 0, false, event -> {})
+		             .regex("a # \\1 (?<t0>\n", Pattern.COMMENTS, false, event -> {});
+	}
+	
+	@Test
+	public void rejectsGroupNamesUsedElsewhere () {
+		TriggerEngine.Builder builder = TriggerEngine.builder().regex("(?<word>a)", 0, false, event -> {});
+		
+		for (String regex : new String[] {"(?<word>b)", "(?<t0>b)", "(?<t12>b)"}) {
+			try {
+				builder.regex(regex, 0, false, event -> {});
+				fail(regex);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains(regex));
+			}
+		}
+		
+		assertArrayEquals(new boolean[] {true, true},
+		                  builder.regex("(?<other>b)[(?<word>]?", 0, false, event -> {}).build().match("ab"));
+	}
+	
+	@Test
+	public void rejectsFlagsThatCantBeCombined () {
+		for (int flag : new int[] {Pattern.LITERAL, Pattern.CANON_EQ}) {
+			try {
+				TriggerEngine.builder().regex("a.b", flag, false, event -> {});
+				fail(String.valueOf(flag));
+			} catch (IllegalArgumentException e) {
+				assertEquals("Triggers can't use the match flags " + flag, e.getMessage());
+			}
+		}
+	}
+}